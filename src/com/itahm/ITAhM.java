@@ -9,6 +9,8 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+import com.itahm.http.AssetCache;
+import com.itahm.http.Compressor;
 import com.itahm.http.HTTPServer;
 import com.itahm.http.Request;
 import com.itahm.http.Response;
@@ -24,6 +26,7 @@ public class ITAhM extends HTTPServer {
 	private final Path root;
 	private Boolean isClosed = false;
 	private final Map<String, Serviceable> services = new LinkedHashMap<>();
+	private final AssetCache assets = new AssetCache();
 	
 	public ITAhM() throws Exception {
 		this("0.0.0.0", 2014);
@@ -70,7 +73,14 @@ public class ITAhM extends HTTPServer {
 		
 		if (!Pattern.compile("^/data/.*").matcher(uri).matches() && Files.isRegularFile(path)) {
 			try {
-				response.write(path);
+				AssetCache.Asset asset = this.assets.get(path);
+				
+				if (asset == null) {
+					response.write(path);
+				}
+				else {
+					write(request, response, asset);
+				}
 			} catch (IOException e) {
 				response.setStatus(Response.Status.SERVERERROR);
 			}
@@ -80,6 +90,41 @@ public class ITAhM extends HTTPServer {
 		}
 	}
 	
+	/**
+	 * If-None-Match 가 일치하면 304, 클라이언트가 gzip 을 받으면 압축된 내용으로 응답한다.
+	 */
+	private void write(Request request, Response response, AssetCache.Asset asset) {
+		// API 응답과 같은 규칙으로 고른다.
+		boolean gzip = asset.gzip != null && "gzip".equals(Compressor.negotiate(request.getHeader("Accept-Encoding")));
+		String etag = gzip? asset.gzipETag: asset.etag;
+		String match = request.getHeader("If-None-Match");
+		
+		response.setHeader("ETag", etag);
+		response.setHeader("Cache-Control", "no-cache");
+		
+		if (asset.gzip != null) {
+			response.setHeader("Vary", "Accept-Encoding");
+		}
+		
+		if (match != null && (match.contains(etag) || match.trim().equals("*"))) {
+			response.setStatus(Response.Status.NOTMODIFIED);
+			
+			return;
+		}
+		
+		if (asset.contentType != null) {
+			response.setHeader("Content-type", asset.contentType);
+		}
+		
+		if (gzip) {
+			response.setHeader("Content-Encoding", "gzip");
+			response.write(asset.gzip);
+		}
+		else {
+			response.write(asset.raw);
+		}
+	}
+	
 	@Override
 	public void doPost(Request request, Response response) {
 		try {
@@ -171,6 +216,7 @@ public class ITAhM extends HTTPServer {
 		Path root = null;
 		String ip = "0.0.0.0";
 		int tcp = 2014;
+		int level = -1;
 		
 		for (int i=0, _i=args.length; i<_i; i++) {
 			if (args[i].indexOf("-") != 0) {
@@ -187,12 +233,24 @@ public class ITAhM extends HTTPServer {
 					tcp = Integer.parseInt(args[++i]);
 				} catch (NumberFormatException nfe) {}
 				
+				break;
+			case "GZIP":
+				try {
+					level = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException nfe) {}
+				
 				break;
 			}
 		}
 		
 		ITAhM itahm = root == null? new ITAhM(ip, tcp): new ITAhM(ip, tcp, root);
 		
+		try {
+			itahm.getCompressor().setLevel(level);
+		} catch (IllegalArgumentException iae) {
+			System.out.format("Invalid compression level %d.\n", level);
+		}
+		
 		Runtime.getRuntime().addShutdownHook(
 			new Thread() {
 				
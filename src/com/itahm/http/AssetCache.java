@@ -0,0 +1,119 @@
+package com.itahm.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 정적 파일의 내용, gzip, ETag, content-type 을 메모리에 보관한다.
+ * 요청마다 파일의 크기와 수정 시각을 비교해 바뀐 파일은 다시 읽는다.
+ */
+public class AssetCache {
+
+	private final static int MAX_SIZE = 4 *1024 *1024;
+	private final static long CAPACITY = 64 *1024 *1024;
+	
+	private final Map<Path, Asset> assetMap = new LinkedHashMap<>(16, .75f, true);
+	private long total = 0;
+	
+	/**
+	 * MAX_SIZE 보다 큰 파일은 보관하지 않고 null.
+	 */
+	public Asset get(Path path) throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
+		long modified = attr.lastModifiedTime().toMillis();
+		Asset asset;
+		
+		if (attr.size() > MAX_SIZE) {
+			return null;
+		}
+		
+		synchronized(this.assetMap) {
+			asset = this.assetMap.get(path);
+		}
+		
+		if (asset != null && asset.modified == modified && asset.raw.length == attr.size()) {
+			return asset;
+		}
+		
+		asset = new Asset(path, modified);
+		
+		synchronized(this.assetMap) {
+			Asset old = this.assetMap.put(path, asset);
+			
+			if (old != null) {
+				this.total -= old.length();
+			}
+			
+			this.total += asset.length();
+			
+			for (Iterator<Asset> it = this.assetMap.values().iterator(); this.total > CAPACITY && it.hasNext();) {
+				this.total -= it.next().length();
+				
+				it.remove();
+			}
+		}
+		
+		return asset;
+	}
+	
+	public void clear() {
+		synchronized(this.assetMap) {
+			this.assetMap.clear();
+			
+			this.total = 0;
+		}
+	}
+	
+	public static class Asset {
+		public final byte [] raw;
+		public final byte [] gzip;
+		public final String etag;
+		public final String gzipETag;
+		public final String contentType;
+		private final long modified;
+		
+		private Asset(Path path, long modified) throws IOException {
+			CRC32 crc = new CRC32();
+			
+			this.raw = Files.readAllBytes(path);
+			this.modified = modified;
+			this.contentType = Files.probeContentType(path);
+			
+			crc.update(this.raw);
+			
+			this.etag = String.format("\"%x-%x\"", this.raw.length, crc.getValue());
+			this.gzipETag = String.format("\"%x-%x-gz\"", this.raw.length, crc.getValue());
+			
+			this.gzip = isCompressible(this.contentType)? compress(this.raw): null;
+		}
+		
+		private long length() {
+			return this.raw.length + (this.gzip == null? 0: this.gzip.length);
+		}
+		
+		private static boolean isCompressible(String contentType) {
+			return contentType != null && (contentType.startsWith("text/") ||
+				contentType.contains("javascript") ||
+				contentType.contains("json") ||
+				contentType.contains("xml"));
+		}
+		
+		private static byte [] compress(byte [] raw) throws IOException {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(raw.length /4);
+			
+			try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+				gzip.write(raw);
+			}
+			
+			return baos.size() < raw.length? baos.toByteArray(): null;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.itahm.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * threshold 보다 큰 응답을 Accept-Encoding 에 따라 gzip 또는 deflate 로 압축한다.
+ * 응답마다 압축 전후 크기와 걸린 시간을 Server-Timing header 로 알려주고 누적한다.
+ */
+public class Compressor {
+
+	public final static int THRESHOLD = 1024;
+	
+	private volatile int level = Deflater.DEFAULT_COMPRESSION;
+	private volatile int threshold = THRESHOLD;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder input = new LongAdder();
+	private final LongAdder output = new LongAdder();
+	private final LongAdder time = new LongAdder();
+	
+	/**
+	 * -1(기본) 부터 9 까지, 0 이면 압축하지 않는다.
+	 */
+	public void setLevel(int level) {
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException(String.valueOf(level));
+		}
+		
+		this.level = level;
+	}
+	
+	public int getLevel() {
+		return this.level;
+	}
+	
+	public void setThreshold(int threshold) {
+		this.threshold = threshold;
+	}
+	
+	public long getCount() {
+		return this.count.sum();
+	}
+	
+	public long getInputBytes() {
+		return this.input.sum();
+	}
+	
+	public long getOutputBytes() {
+		return this.output.sum();
+	}
+	
+	/**
+	 * 압축에 쓴 시간의 합, milliseconds.
+	 */
+	public long getTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.time.sum());
+	}
+	
+	/**
+	 * ETag 이 있는 응답(정적 파일)은 validator 가 encoding 마다 달라야 하므로 건드리지 않는다.
+	 */
+	public boolean compress(Request request, Response response) {
+		int level = this.level;
+		
+		if (level == Deflater.NO_COMPRESSION ||
+			response.getFile() != null ||
+			response.getHeader("Content-Encoding") != null ||
+			response.getHeader("ETag") != null ||
+			response.read().length < this.threshold) {
+			return false;
+		}
+		
+		String encoding = negotiate(request.getHeader("Accept-Encoding"));
+		
+		if (encoding == null) {
+			return false;
+		}
+		
+		byte [] body = response.read();
+		long start = System.nanoTime();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(body.length /4);
+		
+		try (OutputStream os = encoding.equals("gzip")?
+			new GZIPOutputStream(baos) {
+				{
+					def.setLevel(level);
+				}
+			}:
+			new DeflaterOutputStream(baos, new Deflater(level)) {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					
+					def.end();
+				}
+			}) {
+			os.write(body);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			
+			return false;
+		}
+		
+		long elapse = System.nanoTime() - start;
+		
+		this.count.increment();
+		this.input.add(body.length);
+		this.output.add(baos.size());
+		this.time.add(elapse);
+		
+		response.write(baos.toByteArray());
+		response.setHeader("Content-Encoding", encoding);
+		response.setHeader("Vary", "Accept-Encoding");
+		response.setHeader("Server-Timing", String.format("%s;dur=%.3f;desc=\"%d>%d\"",
+			encoding, elapse /1000000f, body.length, baos.size()));
+		
+		return true;
+	}
+	
+	/**
+	 * gzip 을 우선하고, q=0 으로 거부한 encoding 은 쓰지 않는다.
+	 */
+	public static String negotiate(String accept) {
+		if (accept == null) {
+			return null;
+		}
+		
+		boolean gzip = false, deflate = false;
+		String [] param;
+		String name;
+		
+		for (String token : accept.toLowerCase().split(",")) {
+			param = token.split(";");
+			name = param[0].trim();
+			
+			if (param.length > 1 && param[1].trim().matches("q\\s*=\\s*0(\\.0*)?")) {
+				continue;
+			}
+			
+			if (name.equals("gzip") || name.equals("*")) {
+				gzip = true;
+			}
+			else if (name.equals("deflate")) {
+				deflate = true;
+			}
+		}
+		
+		return gzip? "gzip": deflate? "deflate": null;
+	}
+}
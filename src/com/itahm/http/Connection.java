@@ -1,17 +1,21 @@
 package com.itahm.http;
 
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class Connection implements Closeable {
 
@@ -30,234 +34,504 @@ public class Connection implements Closeable {
 	public final static String TRACE = "TRACE";
 	public final static String CONNECT = "CONNECT";
 
-	private final static Timer timer = new Timer("ITAhM Connection timer", true);
-	
-	private Map<String, String> header = new HashMap<>();
+	private final static int MAX_HEADER = 8192;
+	private final static int MAX_BODY = 16 *1024 *1024;
+	private final static byte [] EMPTY = new byte [0];
+	private final static byte [] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.US_ASCII);
 	
 	private final SocketChannel channel;
 	private final HTTPServer listener;
-	private byte [] buffer;
-	private TimerTask task;
-	private int length;
-	private String startLine;
-	private ByteArrayOutputStream body;
-	private boolean initialized = true;
-	private Boolean closed = false;
+	private final ArrayDeque<Message> writeQueue = new ArrayDeque<>();
+	private final Map<Long, Message []> reorderMap = new HashMap<>();
+	private SelectionKey key;
+	private HTTPServer.Reactor reactor;
+	// reactor의 wheel에서 놓인 칸. reactor thread에서만 쓴다.
+	private int slot = -1;
+	private volatile EventStream stream;
+	private volatile long lastActive = System.currentTimeMillis();
+	private long nextRequest = 0;
+	private long nextResponse = 0;
+	private byte [] head = new byte [512];
+	private int headLength = 0;
+	private byte [] body;
+	private int bodyLength;
+	private volatile boolean closed = false;
 	
 	public Connection(SocketChannel channel, HTTPServer listener) {
 		this.channel = channel;
 		this.listener = listener;
-		
-		setTimeout();
 	}
 	
+	/**
+	 * 요청을 읽는 상태 기계.
+	 * header는 재사용하는 head buffer에 모으고 빈 줄을 만나면 body를 읽는다.
+	 */
 	public void parse(ByteBuffer src) throws IOException {
-		setTimeout();
+		// event stream 을 보내기 시작한 connection 은 더 이상 요청을 받지 않는다.
+		if (this.stream != null) {
+			return;
+		}
 		
-		if (this.body == null) {
-			String line;
-			
-			while ((line = readLine(src)) != null) {
-				if (parseHeader(line)) {
-					src.compact().flip();
+		this.lastActive = System.currentTimeMillis();
+		
+		byte b;
+		int length;
+		
+		while (src.hasRemaining()) {
+			if (this.body == null) {
+				b = src.get();
+				
+				//규약에 의해 request-line 이전의 빈 라인은 무시한다.
+				if (this.headLength == 0 && (b == CR || b == LF)) {
+					continue;
+				}
+				
+				if (this.headLength == this.head.length) {
+					if (this.headLength >= MAX_HEADER) {
+						reject(Response.Status.HEADERTOOLARGE);
+					}
+					
+					this.head = Arrays.copyOf(this.head, Math.min(this.headLength *2, MAX_HEADER));
+				}
+				
+				this.head[this.headLength++] = b;
+				
+				if (b == LF && this.headLength > 3 &&
+					this.head[this.headLength -2] == CR &&
+					this.head[this.headLength -3] == LF &&
+					this.head[this.headLength -4] == CR) {
+					length = getContentLength();
 					
-					parseBody(src);
+					if (length > MAX_BODY) {
+						reject(Response.Status.PAYLOADTOOLARGE);
+					}
 					
-					break;
-				};
+					this.body = length > 0? new byte [length]: EMPTY;
+					this.bodyLength = 0;
+				}
+			}
+			else {
+				length = Math.min(src.remaining(), this.body.length - this.bodyLength);
+				
+				src.get(this.body, this.bodyLength, length);
+				
+				this.bodyLength += length;
+			}
+			
+			if (this.body != null && this.bodyLength == this.body.length) {
+				this.listener.dispatch(this);
+				
+				this.headLength = 0;
+				this.body = null;
 			}
-		}
-		else {
-			parseBody(src);
 		}
 	}
 	
-	private void setTimeout() {
-		final Connection request = this;
+	private void reject(Response.Status status) throws IOException {
+		Response response = new Response();
 		
-		if (this.task != null) {
-			this.task.cancel();
-		}
+		response.setStatus(status);
 		
-		this.task = new TimerTask() {
-
-			@Override
-			public void run() {
-				try {
-					listener.closeRequest(request);
-				} catch (IOException ioe) {
-					ioe.printStackTrace();
-				}
-			}
-		};
+		write(nextSequence(), response);
 		
-		timer.schedule(this.task, TIMEOUT_HOUR);
+		throw new IOException(status.getText());
 	}
 	
-	private void parseBody(ByteBuffer src) throws IOException {
-		byte [] bytes = new byte[src.limit()];
-		int length;
+	private int getContentLength() {
+		int start = indexOf(this.head, this.headLength, 0, CONTENT_LENGTH);
+		int length = 0;
+		byte b;
 		
-		src.get(bytes);
-		this.body.write(bytes);
+		if (start < 0) {
+			return 0;
+		}
 		
-		length = this.body.size();
-		if (this.length == length) {
-			new HTTPProcessor(this.listener, this);
+		for (int i=start; i<this.headLength; i++) {
+			b = this.head[i];
 			
-			this.body = null;
-			this.initialized = true;
-		}
-		else if (this.length < length){
-			throw new IOException("malformed http request");
+			if (b >= '0' && b <= '9') {
+				if (length > MAX_BODY) {
+					return Integer.MAX_VALUE;
+				}
+				
+				length = length *10 + (b - '0');
+			}
+			else if (b != ' ' && b != '\t') {
+				break;
+			}
 		}
 		
+		return length;
 	}
 	
-	private boolean parseHeader(String line) throws IOException {
-		if (this.initialized) {
-			if (line.length() != 0) {
-				this.startLine = line;
-				this.header = new HashMap<>();
-				
-				this.initialized = false;	
-			}
-			//else 규약에 의해 request-line 이전의 빈 라인은 무시한다.
-		}
-		else {
-			if ("".equals(line)) {			
-				String length = this.header.get("content-length");
-				
-				try {
-					this.length = Integer.parseInt(length);
-				} catch (NumberFormatException nfe) {
-					this.length = 0;
+	/**
+	 * from 이후의 header 중 name(소문자)인 것의 값이 시작하는 위치. 없으면 -1.
+	 */
+	private static int indexOf(byte [] head, int length, int from, byte [] name) {
+		int i = from, j;
+		
+		// request-line 은 건너뛴다.
+		while (i < length && head[i++] != LF);
+		
+		while (i < length) {
+			for (j=0; j<name.length && i + j < length; j++) {
+				if ((head[i + j] | 0x20) != name[j]) {
+					break;
 				}
-				
-				this.body = new ByteArrayOutputStream();
-				
-				return true;
 			}
-			else {
-				int index = line.indexOf(":");
-				
-				if (index == -1) {
-					throw new IOException("malformed http request");
-				}
+			
+			if (j == name.length && i + j < length && head[i + j] == ':') {
+				for (i += j +1; i < length && (head[i] == ' ' || head[i] == '\t'); i++);
 				
-				this.header.put(line.substring(0, index).toLowerCase(), line.substring(index + 1).trim());
+				return i;
 			}
+			
+			while (i < length && head[i++] != LF);
 		}
 		
-		return false;
+		return -1;
+	}
+	
+	public boolean isClosed() {
+		return this.closed;
 	}
 	
-	private String readLine(ByteBuffer src) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	/**
+	 * head buffer는 다음 요청에 재사용하므로 요청에는 그 복사본을 넘긴다.
+	 */
+	public Request createRequest() {
+		Request request;
 		
-		if (this.buffer != null) {
-			baos.write(this.buffer);
+		try {			
+			request = new Request2(this.channel.getRemoteAddress(), Arrays.copyOf(this.head, this.headLength), this.body);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
 			
-			this.buffer = null;
+			return null;
+		}
+		
+		return request;
+	}
+	
+	/**
+	 * 마지막으로 요청을 읽거나 응답을 쓴 시각. reactor가 idle connection을 정리할 때 사용한다.
+	 */
+	long getLastActive() {
+		return this.lastActive;
+	}
+	
+	/**
+	 * 요청을 읽은 순서대로 번호를 매긴다. selector thread에서만 호출한다.
+	 */
+	long nextSequence() {
+		return this.nextRequest++;
+	}
+	
+	void setKey(HTTPServer.Reactor reactor, SelectionKey key) {
+		this.reactor = reactor;
+		this.key = key;
+	}
+	
+	int getSlot() {
+		return this.slot;
+	}
+	
+	void setSlot(int slot) {
+		this.slot = slot;
+	}
+	
+	SelectionKey getKey() {
+		return this.key;
+	}
+	
+	HTTPServer.Reactor getReactor() {
+		return this.reactor;
+	}
+	
+	SocketChannel getChannel() {
+		return this.channel;
+	}
+	
+	/**
+	 * pipeline 된 요청의 응답은 sequence 순서대로 쓴다. 앞선 응답이 끝나지 않았으면 기다린다.
+	 * 한 번에 쓰지 못한 나머지는 대기열에 넣고 selector thread가 OP_WRITE 로 마저 쓴다.
+	 */
+	public boolean write(long sequence, Response response) throws IOException {
+		if (this.closed) {
+			return false;
 		}
 		
-		int b;
+		Message [] messages = createMessage(response);
+		Message message;
+		boolean pending;
 		
-		while(src.hasRemaining()) {
-			b = src.get();
-			baos.write(b);
-			
-			if (b == LF) {
-				String line = readLine(baos.toByteArray());
-				if (line != null) {
-					return line;
+		synchronized(this.writeQueue) {
+			if (this.closed) {
+				for (Message m : messages) {
+					m.close();
 				}
+				
+				return false;
 			}
+			
+			if (sequence != this.nextResponse) {
+				this.reorderMap.put(sequence, messages);
+				
+				return true;
+			}
+			
+			do {
+				for (Message m : messages) {
+					// stream 이 시작된 뒤 pipeline 된 요청의 응답은 chunk 사이에 끼어들 수 없으므로 버린다.
+					if (this.stream != null) {
+						closeQuietly(m);
+						
+						continue;
+					}
+					
+					this.writeQueue.offer(m);
+					
+					if (m instanceof StreamMessage) {
+						this.stream = ((StreamMessage)m).stream;
+						this.stream.attach(this);
+					}
+				}
+				
+				this.nextResponse++;
+			} while ((messages = this.reorderMap.remove(this.nextResponse)) != null);
+			
+			pending = !drain();
 		}
 		
-		this.buffer = baos.toByteArray();
+		this.lastActive = System.currentTimeMillis();
+		
+		if (pending) {
+			this.listener.requestWrite(this);
+		}
+		else if (this.stream != null) {
+			this.stream.pump();
+		}
 		
-		return null;
+		return true;
 	}
 	
-	public static String readLine(byte [] src) throws IOException {
-		int length = src.length;
-		
-		if (length > 1 && src[length - 2] == CR) {
-			return new String(src, 0, length -2);
+	/**
+	 * event stream 의 chunk 를 응답 순서와 상관없이 대기열 끝에 붙인다.
+	 */
+	void send(ByteBuffer buffer) throws IOException {
+		boolean pending;
+		
+		synchronized(this.writeQueue) {
+			if (this.closed) {
+				throw new IOException("closed");
+			}
+			
+			this.writeQueue.offer(new BufferMessage(buffer));
+			
+			pending = !drain();
 		}
 		
-		return null;
-	}
-
-	public boolean isClosed() {
-		synchronized(closed) {
-			return closed;
+		this.lastActive = System.currentTimeMillis();
+		
+		if (pending) {
+			this.listener.requestWrite(this);
 		}
 	}
 	
-	public Map<String, String> getHeader() {
-		return this.header;
+	boolean isPending() {
+		synchronized(this.writeQueue) {
+			return !this.writeQueue.isEmpty();
+		}
 	}
 	
-	public Request createRequest() {
-		Request request;
-		
-		try {			
-			request = new Request2(this.channel.getRemoteAddress(), this.startLine, this.header, this.body.toByteArray());
+	/**
+	 * 응답을 쓰던 thread 가 아닌 곳에서 connection 을 닫는다.
+	 */
+	void abort() {
+		try {
+			this.listener.closeRequest(this);
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
-			
-			return null;
 		}
-		
-		return request;
 	}
 	
-	public boolean write(Response response) throws IOException {
-		synchronized(closed) {
-			if (closed) {
+	private boolean drain() throws IOException {
+		Message message;
+		
+		while ((message = this.writeQueue.peek()) != null) {
+			if (!message.send(this.channel)) {
 				return false;
 			}
 			
-			ByteBuffer message = response.build();
-			
-			while(message.remaining() > 0) {			
-				this.channel.write(message);
+			this.writeQueue.poll().close();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * selector thread 에서 호출하며 대기열을 모두 썼으면 true.
+	 */
+	boolean flush() throws IOException {
+		synchronized(this.writeQueue) {
+			if (!drain()) {
+				return false;
 			}
 		}
 		
+		if (this.stream != null) {
+			this.stream.pump();
+		}
+		
 		return true;
 	}
 	
+	private static Message [] createMessage(Response response) throws IOException {
+		Path path = response.getFile();
+		
+		if (response.getStream() != null) {
+			return new Message [] {new StreamMessage(response.build(-1), response.getStream())};
+		}
+		
+		if (path == null) {
+			return new Message [] {new BufferMessage(response.build())};
+		}
+		
+		FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+		
+		try {
+			long size = file.size();
+			
+			return new Message [] {new BufferMessage(response.build(size)), new FileMessage(file, size)};
+		} catch (IOException ioe) {
+			file.close();
+			
+			throw ioe;
+		}
+	}
+	
 	@Override
 	public void close() throws IOException {
-		synchronized(closed) {
-			if (closed) {
+		synchronized(this.writeQueue) {
+			if (this.closed) {
 				return;
 			}
 			
-			closed = true;
+			this.closed = true;
+			
+			for (Message message : this.writeQueue) {
+				closeQuietly(message);
+			}
+			
+			for (Message [] messages : this.reorderMap.values()) {
+				for (Message message : messages) {
+					closeQuietly(message);
+				}
+			}
+			
+			this.writeQueue.clear();
+			this.reorderMap.clear();
 		}
-
+		
+		if (this.stream != null) {
+			this.stream.detach();
+		}
+		
+		this.channel.close();
+	}
+	
+	private static void closeQuietly(Message message) {
 		try {
-			this.channel.close();
+			message.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+	
+	/**
+	 * 대기열에 쌓이는 응답 조각. 모두 보냈으면 send 가 true.
+	 */
+	private interface Message extends Closeable {
+		public boolean send(SocketChannel channel) throws IOException;
+	}
+	
+	private static class BufferMessage implements Message {
+		private final ByteBuffer buffer;
+		
+		private BufferMessage(ByteBuffer buffer) {
+			this.buffer = buffer;
 		}
-		finally {
-			if (this.task != null) {
-				this.task.cancel();
+		
+		@Override
+		public boolean send(SocketChannel channel) throws IOException {
+			channel.write(this.buffer);
+			
+			return !this.buffer.hasRemaining();
+		}
+		
+		@Override
+		public void close() {
+		}
+	}
+	
+	/**
+	 * event stream 응답의 header. 대기열에 들어가면 stream 이 connection 을 사용하기 시작한다.
+	 */
+	private static class StreamMessage extends BufferMessage {
+		private final EventStream stream;
+		
+		private StreamMessage(ByteBuffer buffer, EventStream stream) {
+			super(buffer);
+			
+			this.stream = stream;
+		}
+	}
+	
+	/**
+	 * 파일 body 는 transferTo 로 heap 을 거치지 않고 보낸다.
+	 * socket buffer 가 차면 false 를 돌려주고 OP_WRITE 에서 이어서 보낸다.
+	 */
+	private static class FileMessage implements Message {
+		private final FileChannel file;
+		private final long size;
+		private long position = 0;
+		
+		private FileMessage(FileChannel file, long size) {
+			this.file = file;
+			this.size = size;
+		}
+		
+		@Override
+		public boolean send(SocketChannel channel) throws IOException {
+			long count;
+			
+			while (this.position < this.size) {
+				count = this.file.transferTo(this.position, this.size - this.position, channel);
+				
+				if (count > 0) {
+					this.position += count;
+				}
+				else if (this.position >= this.file.size()) {
+					throw new IOException("file truncated");
+				}
+				else {
+					return false;
+				}
 			}
+			
+			return true;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			this.file.close();
 		}
 	}
 	
 	class Request2 extends Request {
 
-		private final String sessionID;
-		
-		public Request2(SocketAddress peer, String startLine, Map<String, String> header, byte[] body) throws IOException {
-			super(peer, startLine, header, body);
-			
-			sessionID = getHeader(Connection.Header.SESSION.toString());
+		public Request2(SocketAddress peer, byte [] head, byte [] body) throws IOException {
+			super(peer, head, body);
 		}
 		
 		@Override
@@ -265,8 +539,10 @@ public class Connection implements Closeable {
 			super.getSession(create);
 			
 			if (super.session == null) {
-				if (this.sessionID != null) {
-					super.session = Session.find(this.sessionID);
+				String sessionID = getHeader(Connection.Header.SESSION.toString());
+				
+				if (sessionID != null) {
+					super.session = Session.find(sessionID);
 				}
 				
 				if (super.session != null) {
@@ -279,69 +555,105 @@ public class Connection implements Closeable {
 		
 		@Override
 		public String getRequestedSessionId() {
-			return super.cookie != null? super.cookie: this.sessionID;
+			String cookie = super.getRequestedSessionId();
+			
+			return cookie != null? cookie: getHeader(Connection.Header.SESSION.toString());
 		}
 	}
 	
-	
+	/**
+	 * header 문자열은 getHeader 로 찾을 때에만 만든다.
+	 */
 	class Request implements com.itahm.http.Request {
 		private final SocketAddress peer;
-		private final Map<String, String> header;
+		private final byte [] head;
 		private final byte [] body;
 		private final String method;
 		private final String uri;
 		private final String version;
-		private final String cookie;
+		private String cookie;
+		private boolean cookieParsed = false;
 		private Session session;
 		private String queryString;
 		
-		public Request(SocketAddress peer, String startLine, Map<String, String> header, byte [] body) throws IOException {
+		public Request(SocketAddress peer, byte [] head, byte [] body) throws IOException {
 			this.peer = peer;
-			this.header = header;
+			this.head = head;
 			this.body = body;
 			
-			String [] token = startLine.split(" ");
-			if (token.length != 3) {
+			int end = 0;
+			
+			while (end < head.length && head[end] != CR && head[end] != LF) {
+				end++;
+			}
+			
+			int sp1 = indexOf(head, 0, end, (byte)' ');
+			int sp2 = sp1 < 0? -1: indexOf(head, sp1 +1, end, (byte)' ');
+			
+			if (sp2 < 0 || indexOf(head, sp2 +1, end, (byte)' ') >= 0) {
 				throw new IOException("malformed http request");
 			}
 			
-			this.method = token[0];
+			this.method = new String(head, 0, sp1, StandardCharsets.US_ASCII);
 			
-			String uri = token[1];
-			int i = uri.indexOf("?");
+			int i = indexOf(head, sp1 +1, sp2, (byte)'?');
 			
 			if (i == -1) {
-				this.uri = uri;
+				this.uri = new String(head, sp1 +1, sp2 - sp1 -1, StandardCharsets.UTF_8);
 			}
 			else {
-				this.uri = uri.substring(0, i);
+				this.uri = new String(head, sp1 +1, i - sp1 -1, StandardCharsets.UTF_8);
 				
-				this.queryString = uri.substring(i);
+				this.queryString = new String(head, i, sp2 - i, StandardCharsets.UTF_8);
 			}
 			
-			this.version = token[2];
-			
-			String line = getHeader(Connection.Header.COOKIE.toString());
-			
-			if(line == null) {
-				this.cookie = null;
+			this.version = new String(head, sp2 +1, end - sp2 -1, StandardCharsets.US_ASCII);
+		}
+		
+		private int indexOf(byte [] bytes, int from, int to, byte b) {
+			for (int i=from; i<to; i++) {
+				if (bytes[i] == b) {
+					return i;
+				}
 			}
-			else {
-				String [] cookies = line.split("; ");
-				String cookie = null;
+			
+			return -1;
+		}
+		
+		private String getCookie() {
+			if (!this.cookieParsed) {
+				this.cookieParsed = true;
 				
-				for(i=0, length=cookies.length; i<length; i++) {
-					token = cookies[i].split("=");
+				String line = getHeader(Connection.Header.COOKIE.toString());
+				
+				if (line != null) {
+					int start = 0, end, eq;
 					
-					if (token.length == 2 && Session.ID.equals(token[0]) && token[1].trim().length() > 0) {
-						cookie = token[1];
+					while (start < line.length()) {
+						end = line.indexOf(';', start);
+						
+						if (end == -1) {
+							end = line.length();
+						}
+						
+						eq = line.indexOf('=', start);
+						
+						if (eq > 0 && eq < end && line.substring(start, eq).trim().equals(Session.ID)) {
+							String value = line.substring(eq +1, end).trim();
+							
+							if (value.length() > 0) {
+								this.cookie = value;
+								
+								break;
+							}
+						}
 						
-						break;
+						start = end +1;
 					}
 				}
-				
-				this.cookie = cookie;
 			}
+			
+			return this.cookie;
 		}
 		
 		@Override
@@ -362,8 +674,10 @@ public class Connection implements Closeable {
 		@Override
 		public Session getSession(boolean create) {
 			if (this.session == null) {
-				if (this.cookie != null) {
-					this.session = Session.find(this.cookie);
+				String cookie = getCookie();
+				
+				if (cookie != null) {
+					this.session = Session.find(cookie);
 				}
 				
 				if (this.session != null) {
@@ -393,7 +707,7 @@ public class Connection implements Closeable {
 		
 		@Override
 		public String getRequestedSessionId() {
-			return this.cookie;
+			return getCookie();
 		}
 		
 		@Override
@@ -403,7 +717,24 @@ public class Connection implements Closeable {
 		
 		@Override
 		public String getHeader(String name) {
-			return this.header.get(name.toLowerCase());
+			byte [] key = name.toLowerCase().getBytes(StandardCharsets.US_ASCII);
+			int start = Connection.indexOf(this.head, this.head.length, 0, key);
+			
+			if (start < 0) {
+				return null;
+			}
+			
+			int end = start;
+			
+			while (end < this.head.length && this.head[end] != CR && this.head[end] != LF) {
+				end++;
+			}
+			
+			while (end > start && (this.head[end -1] == ' ' || this.head[end -1] == '\t')) {
+				end--;
+			}
+			
+			return new String(this.head, start, end - start, StandardCharsets.UTF_8);
 		}
 	}
 }
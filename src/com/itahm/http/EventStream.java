@@ -0,0 +1,165 @@
+package com.itahm.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * chunked 로 보내는 text/event-stream 응답. connection 은 reactor 가 들고 있으므로 thread 를 점유하지 않는다.
+ * 아직 보내지 못한 event 는 capacity 크기의 ring buffer 에 쌓이고, 넘치면 오래된 것부터 버린다.
+ */
+public class EventStream {
+
+	private final static byte [] CRLF = Response.CRLF.getBytes(StandardCharsets.US_ASCII);
+	private final static byte [] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+	
+	private final byte [][] ring;
+	private int head = 0;
+	private int size = 0;
+	private long dropped = 0;
+	private boolean closed = false;
+	private volatile Connection connection;
+	
+	EventStream(int capacity) {
+		ring = new byte [Math.max(1, capacity)][];
+	}
+	
+	/**
+	 * 닫힌 stream 이면 false.
+	 */
+	public boolean send(long id, String data) {
+		byte [] event = String.format("id: %d\ndata: %s\n\n", id, data.replace("\n", "\ndata: ")).getBytes(StandardCharsets.UTF_8);
+		
+		synchronized(this) {
+			if (this.closed) {
+				return false;
+			}
+			
+			if (this.size == this.ring.length) {
+				this.head = (this.head +1) % this.ring.length;
+				this.size--;
+				this.dropped++;
+			}
+			
+			this.ring[(this.head + this.size) % this.ring.length] = event;
+			this.size++;
+		}
+		
+		pump();
+		
+		return true;
+	}
+	
+	/**
+	 * 보낼 event 가 없으면 comment 한 줄을 보내 idle connection 으로 끊기지 않게 한다. 닫힌 stream 이면 false.
+	 */
+	public boolean heartbeat() {
+		synchronized(this) {
+			if (this.closed) {
+				return false;
+			}
+			
+			if (this.size > 0) {
+				return true;
+			}
+			
+			this.ring[this.head] = HEARTBEAT;
+			this.size++;
+		}
+		
+		pump();
+		
+		return true;
+	}
+	
+	public synchronized boolean isClosed() {
+		return this.closed;
+	}
+	
+	/**
+	 * ring buffer 가 넘쳐 버린 event 의 수.
+	 */
+	public synchronized long getDropped() {
+		return this.dropped;
+	}
+	
+	public void close() {
+		Connection connection = this.connection;
+		
+		synchronized(this) {
+			if (this.closed) {
+				return;
+			}
+			
+			this.closed = true;
+		}
+		
+		if (connection != null) {
+			connection.abort();
+		}
+	}
+	
+	/**
+	 * 응답 header 가 connection 의 대기열에 들어갔다. writeQueue lock 안에서 불리므로 lock 을 잡지 않는다.
+	 */
+	void attach(Connection connection) {
+		this.connection = connection;
+	}
+	
+	void detach() {
+		synchronized(this) {
+			this.closed = true;
+			this.size = 0;
+		}
+	}
+	
+	/**
+	 * connection 의 대기열이 비었을 때 쌓인 event 를 하나의 chunk 로 묶어 보낸다.
+	 * 대기열이 남아 있으면 reactor 가 모두 쓴 뒤 다시 부른다.
+	 */
+	void pump() {
+		Connection connection = this.connection;
+		
+		if (connection == null) {
+			return;
+		}
+		
+		synchronized(this) {
+			if (this.closed || this.size == 0 || connection.isPending()) {
+				return;
+			}
+			
+			int length = 0;
+			
+			for (int i=0; i<this.size; i++) {
+				length += this.ring[(this.head + i) % this.ring.length].length;
+			}
+			
+			byte [] size = Integer.toHexString(length).getBytes(StandardCharsets.US_ASCII);
+			ByteBuffer chunk = ByteBuffer.allocate(size.length + CRLF.length + length + CRLF.length);
+			
+			chunk.put(size).put(CRLF);
+			
+			for (int i=0; i<this.size; i++) {
+				chunk.put(this.ring[(this.head + i) % this.ring.length]);
+				
+				this.ring[(this.head + i) % this.ring.length] = null;
+			}
+			
+			chunk.put(CRLF).flip();
+			
+			this.head = 0;
+			this.size = 0;
+			
+			try {
+				connection.send(chunk);
+			} catch (IOException ioe) {
+				this.closed = true;
+			}
+		}
+		
+		if (isClosed()) {
+			connection.abort();
+		}
+	}
+}
@@ -4,26 +4,61 @@ import java.io.IOException;
 
 import com.itahm.http.Connection.Header;
 
-public class HTTPProcessor extends Thread {
+public class HTTPProcessor implements Runnable {
 	
 	private final HTTPServer server;
 	private final Connection connection;
 	private final Request request;
+	private final long sequence;
 	
 	public HTTPProcessor(HTTPServer server, Connection connection) {
 		this.server = server;
 		this.connection = connection;
 		
 		request = connection.createRequest();
-		
-		setDaemon(true);
-		setName("ITAhM HTTPProcessor");
-		
-		start();
+		sequence = connection.nextSequence();
 	}
 	
+	long getSequence() {
+		return this.sequence;
+	}
+	
+	/**
+	 * 같은 connection의 응답은 sequence 순서대로 나가므로, 어떤 경우에도 이 sequence의 응답을 쓴다.
+	 */
 	@Override
 	public void run() {
+		Response response = null;
+		
+		try {
+			if (this.request == null) {
+				response = new Response();
+				
+				response.setStatus(Response.Status.BADREQUEST);
+			}
+			else {
+				response = process();
+			}
+		} catch (RuntimeException re) {
+			re.printStackTrace();
+			
+			response = null;
+		} finally {
+			if (response == null) {
+				response = new Response();
+				
+				response.setStatus(Response.Status.SERVERERROR);
+			}
+			
+			try {
+				this.connection.write(this.sequence, response);
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+		}
+	}
+	
+	private Response process() {
 		Response response = new Response();
 		String origin = request.getHeader(Header.ORIGIN.toString());
 		
@@ -66,10 +101,8 @@ public class HTTPProcessor extends Thread {
 			}
 		}
 		
-		try {
-			this.connection.write(response);
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
-		}
+		this.server.getCompressor().compress(this.request, response);
+		
+		return response;
 	}
 }
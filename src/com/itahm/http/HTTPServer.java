@@ -6,25 +6,49 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 하나의 listener thread가 접속을 받고, REACTOR_COUNT 개의 reactor가 접속을 나누어 읽고 쓴다.
+ * reactor마다 자신의 selector와 buffer를 가진다.
+ */
 public abstract class HTTPServer implements Runnable, Closeable {
 	
 	private final static int BUF_SIZE = 2048;
+	private final static int PROCESSOR_COUNT = 256;
+	private final static int QUEUE_SIZE = 1024;
+	private final static int REACTOR_COUNT = Runtime.getRuntime().availableProcessors();
+	private final static long TIMEOUT = Connection.TIMEOUT_HOUR;
 	private final ServerSocketChannel channel;
 	private final ServerSocket listener;
 	private final Selector selector;
-	private final ByteBuffer buffer;
-	private final Set<Connection> connections = new HashSet<Connection>();
+	private final Reactor [] reactors;
+	private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+	private final ExecutorService executor;
+	private final Compressor compressor = new Compressor();
+	private int next = 0;
 	
-	private Boolean closed = false;
+	private volatile Boolean closed = false;
 
 	public HTTPServer() throws IOException {
 		this("0.0.0.0", 2014);
@@ -39,10 +63,33 @@ public abstract class HTTPServer implements Runnable, Closeable {
 	}
 	
 	public HTTPServer(String ip, int tcp) throws IOException {
+		this(ip, tcp, PROCESSOR_COUNT, QUEUE_SIZE);
+	}
+	
+	public HTTPServer(String ip, int tcp, int processor, int queue) throws IOException {
+		this(ip, tcp, processor, queue, REACTOR_COUNT);
+	}
+	
+	/**
+	 * 요청은 최대 processor 개의 thread가 처리하고, 모두 사용 중이면 queue 개까지 대기한다.
+	 * 대기열도 가득 차면 503으로 응답한다.
+	 */
+	public HTTPServer(String ip, int tcp, int processor, int queue, int reactor) throws IOException {
+		AtomicInteger count = new AtomicInteger();
+		
+		executor = new ThreadPoolExecutor(processor, processor, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queue), r -> {
+			Thread t = new Thread(r, String.format("ITAhM HTTPProcessor %d", count.incrementAndGet()));
+			
+			t.setDaemon(true);
+			
+			return t;
+		});
+		
+		((ThreadPoolExecutor)executor).allowCoreThreadTimeOut(true);
+		
 		channel = ServerSocketChannel.open();
 		listener = channel.socket();
 		selector = Selector.open();
-		buffer = ByteBuffer.allocateDirect(BUF_SIZE);
 		
 		listener.bind(new InetSocketAddress(
 			InetAddress.getByName(ip), tcp));
@@ -50,6 +97,12 @@ public abstract class HTTPServer implements Runnable, Closeable {
 		channel.configureBlocking(false);
 		channel.register(selector, SelectionKey.OP_ACCEPT);
 		
+		reactors = new Reactor [Math.max(1, reactor)];
+		
+		for (int i=0; i<reactors.length; i++) {
+			reactors[i] = new Reactor(i +1);
+		}
+		
 		Thread t = new Thread(this);
 		
 		t.setName("ITAhM HTTP Listener");
@@ -58,55 +111,72 @@ public abstract class HTTPServer implements Runnable, Closeable {
 	}
 	
 	private void onConnect() throws IOException {
-		SocketChannel channel = null;
-		Connection connection;
+		SocketChannel channel;
 		
-		try {
-			channel = this.channel.accept();
-			connection = new Connection(channel, this);
+		while ((channel = this.channel.accept()) != null) {
+			try {
+				channel.configureBlocking(false);
+			} catch (IOException ioe) {
+				channel.close();
+				
+				throw ioe;
+			}
 			
-			channel.configureBlocking(false);
-			channel.register(this.selector, SelectionKey.OP_READ, connection);
+			Connection connection = new Connection(channel, this);
 			
 			connections.add(connection);
-		} catch (IOException ioe) {
-			if (channel != null) {
-				channel.close();
-			}
 			
-			throw ioe;
+			this.reactors[this.next++ % this.reactors.length].register(connection);
 		}
 	}
 	
-	private void onRead(SelectionKey key) throws IOException {
-		SocketChannel channel = (SocketChannel)key.channel();
-		Connection connection = (Connection)key.attachment();
-		int bytes = 0;
-		
-		this.buffer.clear();
-		
-		bytes = channel.read(buffer);
+	void requestWrite(Connection connection) {
+		Reactor reactor = connection.getReactor();
 		
-		if (bytes == -1) {
-			closeRequest(connection);
+		if (reactor != null) {
+			reactor.requestWrite(connection);
 		}
-		else if (bytes > 0) {
-			this.buffer.flip();
-				
-			connection.parse(this.buffer);
+	}
+	
+	void dispatch(Connection connection) {
+		HTTPProcessor processor = new HTTPProcessor(this, connection);
+		
+		try {
+			this.executor.execute(processor);
+		} catch (RejectedExecutionException ree) {
+			Response response = new Response();
+			
+			response.setStatus(Response.Status.UNAVAILABLE);
+			response.setHeader("Retry-After", "1");
+			
+			try {
+				connection.write(processor.getSequence(), response);
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
 		}
 	}
-
+	
 	public void closeRequest(Connection connection) throws IOException {
+		Reactor reactor = connection.getReactor();
+		
 		connection.close();
 		
 		connections.remove(connection);
+		
+		if (reactor != null) {
+			reactor.unschedule(connection);
+		}
 	}
 	
 	public int getConnectionSize() {
 		return connections.size();
 	}
 	
+	public Compressor getCompressor() {
+		return this.compressor;
+	}
+	
 	protected void doGet(Request connection, Response response) {
 	}
 	
@@ -129,6 +199,12 @@ public abstract class HTTPServer implements Runnable, Closeable {
 			
 		connections.clear();
 		
+		this.executor.shutdownNow();
+		
+		for (Reactor reactor : this.reactors) {
+			reactor.selector.wakeup();
+		}
+		
 		this.selector.wakeup();
 	}
 
@@ -153,20 +229,228 @@ public abstract class HTTPServer implements Runnable, Closeable {
 					key = iterator.next();
 					iterator.remove();
 					
-					if (!key.isValid()) {
+					if (key.isValid() && key.isAcceptable()) {
+						try {
+							onConnect();
+						} catch (IOException ioe) {
+							ioe.printStackTrace();
+						}
+					}
+				}
+			}
+		}
+		
+		try {
+			this.selector.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+		
+		try {
+			this.listener.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+	
+	/**
+	 * 접속의 읽기, 쓰기를 담당하는 I/O thread.
+	 * selector 등록과 interest 변경은 이 thread에서만 한다.
+	 * 
+	 * idle connection은 hashed wheel로 정리한다. connection은 TIMEOUT 뒤의 칸에 놓이고
+	 * 그 칸을 지날 때 그동안 활동이 있었으면 다시 TIMEOUT 뒤의 칸으로 옮겨진다.
+	 * 닫힌 connection은 그 칸을 지날 때까지 기다리지 않고 바로 wheel에서 뺀다.
+	 */
+	class Reactor implements Runnable {
+		
+		private final static int WHEEL_SIZE = 64;
+		private final static long TICK = TIMEOUT / WHEEL_SIZE;
+		private final Selector selector;
+		private final ByteBuffer buffer;
+		private final Queue<Connection> registerRequests = new ConcurrentLinkedQueue<>();
+		private final Queue<Connection> writeRequests = new ConcurrentLinkedQueue<>();
+		private final Queue<Connection> closeRequests = new ConcurrentLinkedQueue<>();
+		private final List<Set<Connection>> wheel = new ArrayList<>(WHEEL_SIZE);
+		private int cursor = 0;
+		private long nextTick = System.currentTimeMillis() + TICK;
+		
+		private Reactor(int id) throws IOException {
+			selector = Selector.open();
+			buffer = ByteBuffer.allocateDirect(BUF_SIZE);
+			
+			for (int i=0; i<WHEEL_SIZE; i++) {
+				wheel.add(new LinkedHashSet<>());
+			}
+			
+			Thread t = new Thread(this);
+			
+			t.setName(String.format("ITAhM HTTP Reactor %d", id));
+			
+			t.start();
+		}
+		
+		private void register(Connection connection) {
+			this.registerRequests.offer(connection);
+			
+			this.selector.wakeup();
+		}
+		
+		private void requestWrite(Connection connection) {
+			this.writeRequests.offer(connection);
+			
+			this.selector.wakeup();
+		}
+		
+		/**
+		 * wheel은 이 thread에서만 다루므로 다음 차례에 뺀다.
+		 */
+		private void unschedule(Connection connection) {
+			this.closeRequests.offer(connection);
+		}
+		
+		private void applyRequests() {
+			Connection connection;
+			SelectionKey key;
+			
+			while ((connection = this.registerRequests.poll()) != null) {
+				try {
+					connection.setKey(this, connection.getChannel().register(this.selector, SelectionKey.OP_READ, connection));
+					
+					schedule(connection, System.currentTimeMillis());
+				} catch (IOException ioe) {
+					// 그 사이 닫힌 connection
+					connections.remove(connection);
+				}
+			}
+			
+			while ((connection = this.writeRequests.poll()) != null) {
+				key = connection.getKey();
+				
+				try {
+					if (key != null && key.isValid()) {
+						key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					}
+				} catch (CancelledKeyException cke) {
+					// 그 사이 닫힌 connection
+				}
+			}
+			
+			while ((connection = this.closeRequests.poll()) != null) {
+				if (connection.getSlot() >= 0) {
+					this.wheel.get(connection.getSlot()).remove(connection);
+					
+					connection.setSlot(-1);
+				}
+			}
+		}
+		
+		private void schedule(Connection connection, long now) {
+			long ticks = (connection.getLastActive() + TIMEOUT - now + TICK -1) / TICK;
+			int slot = (int)((this.cursor + Math.max(1, Math.min(ticks, WHEEL_SIZE -1))) % WHEEL_SIZE);
+			
+			this.wheel.get(slot).add(connection);
+			
+			connection.setSlot(slot);
+		}
+		
+		private void expire(long now) {
+			Connection connection;
+			
+			while (now >= this.nextTick) {
+				this.cursor = (this.cursor +1) % WHEEL_SIZE;
+				this.nextTick += TICK;
+				
+				// schedule은 지금 칸에 넣지 않으므로 도는 동안 칸이 바뀌지 않는다.
+				for (Iterator<Connection> it = this.wheel.get(this.cursor).iterator(); it.hasNext();) {
+					connection = it.next();
+					
+					it.remove();
+					
+					connection.setSlot(-1);
+					
+					if (connection.isClosed()) {
 						continue;
 					}
 					
-					if (key.isAcceptable()) {
+					if (connection.getLastActive() + TIMEOUT <= now) {
 						try {
-							onConnect();
+							closeRequest(connection);
 						} catch (IOException ioe) {
 							ioe.printStackTrace();
 						}
 					}
-					else if (key.isReadable()) {
+					else {
+						schedule(connection, now);
+					}
+				}
+			}
+		}
+		
+		private void onRead(SelectionKey key) throws IOException {
+			SocketChannel channel = (SocketChannel)key.channel();
+			Connection connection = (Connection)key.attachment();
+			int bytes = 0;
+			
+			this.buffer.clear();
+			
+			bytes = channel.read(buffer);
+			
+			if (bytes == -1) {
+				closeRequest(connection);
+			}
+			else if (bytes > 0) {
+				this.buffer.flip();
+					
+				connection.parse(this.buffer);
+			}
+		}
+		
+		private void onWrite(SelectionKey key) throws IOException {
+			if (((Connection)key.attachment()).flush()) {
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+			}
+		}
+		
+		@Override
+		public void run() {
+			Iterator<SelectionKey> iterator = null;
+			SelectionKey key = null;
+			int count;
+			
+			while(!closed) {
+				try {
+					count = this.selector.select(Math.max(1, this.nextTick - System.currentTimeMillis()));
+				} catch (IOException ioe) {
+					ioe.printStackTrace();
+					
+					continue;
+				}
+				
+				applyRequests();
+				
+				if (count > 0) {
+					iterator = this.selector.selectedKeys().iterator();
+					while(iterator.hasNext()) {
+						key = iterator.next();
+						iterator.remove();
+						
+						if (!key.isValid()) {
+							continue;
+						}
+						
 						try {
-							onRead(key);
+							if (key.isWritable()) {
+								onWrite(key);
+							}
+							
+							if (key.isValid() && key.isReadable()) {
+								onRead(key);
+							}
+						}
+						catch (CancelledKeyException cke) {
+						}
+						catch (ClosedChannelException cce) {
+							// event stream 을 닫으면서 다른 thread 가 이미 닫은 connection
 						}
 						catch (IOException ioe) {
 							ioe.printStackTrace();
@@ -179,19 +463,15 @@ public abstract class HTTPServer implements Runnable, Closeable {
 						}
 					}
 				}
+				
+				expire(System.currentTimeMillis());
+			}
+			
+			try {
+				this.selector.close();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
 			}
-		}
-		
-		try {
-			this.selector.close();
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
-		}
-		
-		try {
-			this.listener.close();
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
 		}
 	}
 }
@@ -19,15 +19,20 @@ public class Response {
 	private final Map<String, String> header = new HashMap<String, String>();
 	private Status status = Status.OK;
 	private byte [] body = new byte [0];
+	private Path file;
+	private EventStream stream;
 	
 	public enum Status {
 		OK(200, "OK"),
 		NOCONTENT(204, "No Content"),
+		NOTMODIFIED(304, "Not Modified"),
 		BADREQUEST(400, "Bad request"),
 		UNAUTHORIZED(401, "Unauthorized"),
 		NOTFOUND(404, "Not found"),
 		NOTALLOWED(405, "Method Not Allowed"),
 		CONFLICT(409, "Conflict"),
+		PAYLOADTOOLARGE(413, "Payload Too Large"),
+		HEADERTOOLARGE(431, "Request Header Fields Too Large"),
 		SERVERERROR(500, "Internal Server Error"),
 		NOTIMPLEMENTED(501, "Not Implemented"),
 		UNAVAILABLE(503, "Service Unavailable"),
@@ -70,13 +75,14 @@ public class Response {
 	
 	public void write(byte [] body) {
 		this.body = body;
+		this.file = null;
 	}
 	
 	public void write(String body) {
 		try {
-			this.body = body.getBytes(StandardCharsets.UTF_8.name());
+			write(body.getBytes(StandardCharsets.UTF_8.name()));
 		} catch (UnsupportedEncodingException e) {
-			this.body = new byte [0];
+			write(new byte [0]);
 		}
 	}
 	
@@ -84,16 +90,50 @@ public class Response {
 		write(url.toPath());
 	}
 	
+	/**
+	 * 파일은 heap 에 읽어 들이지 않고 Connection 이 FileChannel 에서 socket 으로 직접 보낸다.
+	 */
 	public void write(Path url) throws IOException {
-		write(Files.readAllBytes(url));
+		if (!Files.isReadable(url)) {
+			throw new IOException(url.toString());
+		}
+		
+		this.body = new byte [0];
+		this.file = url;
 		
 		setHeader("Content-type", Files.probeContentType(url));
 	}
 	
+	Path getFile() {
+		return this.file;
+	}
+	
+	/**
+	 * 응답을 끝내지 않고 event 를 계속 보낸다. 보내지 못한 event 는 capacity 개까지 보관한다.
+	 */
+	public EventStream stream(int capacity) {
+		this.body = new byte [0];
+		this.file = null;
+		this.stream = new EventStream(capacity);
+		
+		setHeader("Content-type", "text/event-stream; charset=utf-8");
+		setHeader("Cache-Control", "no-cache");
+		
+		return this.stream;
+	}
+	
+	EventStream getStream() {
+		return this.stream;
+	}
+	
 	public byte [] read() {
 		return this.body;
 	}
 	
+	public String getHeader(String name) {
+		return this.header.get(name);
+	}
+	
 	public Response setHeader(String name, String value) {
 		this.header.put(name, value);
 		
@@ -101,14 +141,35 @@ public class Response {
 	}
 	
 	public ByteBuffer build() throws IOException {
+		byte [] header = buildHeader(this.body.length);
+		byte [] message = new byte [header.length + this.body.length];
+		
+		System.arraycopy(header, 0, message, 0, header.length);
+		System.arraycopy(this.body, 0, message, header.length, this.body.length);
+		
+		return ByteBuffer.wrap(message);
+	}
+	
+	/**
+	 * body 를 따로 보내는 응답의 header. length 가 음수이면 chunked.
+	 */
+	ByteBuffer build(long length) throws IOException {
+		return ByteBuffer.wrap(buildHeader(length));
+	}
+	
+	private byte [] buildHeader(long length) throws IOException {
 		StringBuilder sb = new StringBuilder();
 		Iterator<String> iterator;		
 		String key;
-		byte [] header;
-		byte [] message;
 		
 		sb.append(String.format("HTTP/1.1 %d %s" +CRLF, this.status.getCode(), this.status.getText()));
-		sb.append(String.format(FIELD, "Content-Length", String.valueOf(this.body.length)));
+		
+		if (length < 0) {
+			sb.append(String.format(FIELD, "Transfer-Encoding", "chunked"));
+		}
+		else {
+			sb.append(String.format(FIELD, "Content-Length", String.valueOf(length)));
+		}
 		
 		iterator = this.header.keySet().iterator();
 		while(iterator.hasNext()) {
@@ -119,14 +180,7 @@ public class Response {
 		
 		sb.append(CRLF);
 		
-		header = sb.toString().getBytes(StandardCharsets.US_ASCII.name());
-		
-		message = new byte [header.length + this.body.length];
-		
-		System.arraycopy(header, 0, message, 0, header.length);
-		System.arraycopy(this.body, 0, message, header.length, this.body.length);
-		
-		return ByteBuffer.wrap(message);
+		return sb.toString().getBytes(StandardCharsets.US_ASCII.name());
 	}
 	
 }
@@ -2,10 +2,8 @@ package com.itahm.kts;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -13,16 +11,24 @@ import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.h2.jdbcx.JdbcConnectionPool;
 import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Counter64;
 import org.snmp4j.smi.Integer32;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.UnsignedInteger32;
 import org.snmp4j.smi.Variable;
 
 import com.itahm.json.JSONArray;
@@ -34,23 +40,22 @@ import com.itahm.nms.Commander;
 import com.itahm.nms.NodeEventReceivable;
 import com.itahm.nms.SmartSearch;
 import com.itahm.nms.Batch;
+import com.itahm.nms.ResourceWriter;
+import com.itahm.nms.series.SegmentStore;
+import com.itahm.nms.series.SeriesStore;
 import com.itahm.nms.Bean.*;
 import com.itahm.nms.node.PDUManager;
+import com.itahm.nms.node.SNMPNode;
 import com.itahm.nms.parser.HRProcessorLoad;
-import com.itahm.nms.parser.HRStorageMemory;
-import com.itahm.nms.parser.HRStorageUsed;
-import com.itahm.nms.parser.IFInErrors;
-import com.itahm.nms.parser.IFInOctets;
-import com.itahm.nms.parser.IFOutErrors;
-import com.itahm.nms.parser.IFOutOctets;
 import com.itahm.nms.parser.Parseable;
-import com.itahm.nms.parser.ResponseTime;
+import com.itahm.nms.parser.ParserRegistry;
 import com.itahm.util.Listener;
 import com.itahm.util.Network;
 import com.itahm.util.Util;
 
 public class H2Agent implements Commander, NodeEventReceivable, Listener, Closeable {
 	private final String RATE_SUFFIX = "_RATE";
+	private final static int MAX_REPETITIONS = 10;
 	
 	private Boolean isClosed = false;
 	private Long nextNodeID = Long.valueOf(1);
@@ -63,32 +68,16 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 	private final NodeManager nodeManager;
 	protected final JdbcConnectionPool coreConnPool;
 	protected final JdbcConnectionPool dataConnPool;
+	private final SeriesStore store;
 	private final Batch batch;
+	private final ResourceWriter writer;
+	private final ForkJoinPool parserPool;
+	private final Set<Long> parsing = ConcurrentHashMap.newKeySet();
+	private final ParserRegistry parsers = new ParserRegistry();
 	private final static Map<String, Rule> ruleMap = new ConcurrentHashMap<>();
 	private final Config config = new Config();
 	private final Path root;
 	
-	enum Parser {
-		HRPROCESSORLOAD(new HRProcessorLoad()),
-		HRSTORAGEMEMORY(new HRStorageMemory()),
-		HRSTORAGEUSED(new HRStorageUsed()),
-		IFINOCTETS(new IFInOctets()),
-		IFOUTOCTETS(new IFOutOctets()),
-		IFINERRORS(new IFInErrors()),
-		IFOUTERRORS(new IFOutErrors()),
-		RESPONSETIME(new ResponseTime());
-		
-		private final Parseable parser;
-		
-		private Parser(Parseable parser) {
-			this.parser = parser;
-		}
-		
-		public Parseable getInstance() {
-			return this.parser;
-		}
-	}
-	
 	{
 		try {
 			Class.forName("org.h2.Driver");
@@ -159,10 +148,21 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 		initDataTable();
 		initData();
 		
-		batch = new Batch(path, resourceMap, ruleMap);
+		store = new SegmentStore(path);
+		batch = new Batch(path, store, resourceMap, ruleMap);
 		
 		batch.schedule(config.saveInterval);
 		
+		writer = new ResourceWriter(dataConnPool, config.requestInterval);
+		
+		parserPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			
+			t.setName(String.format("ITAhM Parser %d", t.getPoolIndex()));
+			
+			return t;
+		}, null, true);
+		
 		nodeManager = new NodeManager(this, config.requestInterval, config.timeout, config.retry, limit);
 		
 		System.out.println("Agent start.");
@@ -182,8 +182,23 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 			ioe.printStackTrace();
 		}
 		
+		this.parserPool.shutdown();
+		
+		try {
+			this.parserPool.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException ie) {
+		}
+		
 		this.batch.cancel();
 		
+		try {
+			this.store.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+		
+		this.writer.cancel();
+		
 		this.coreConnPool.dispose();
 		this.dataConnPool.dispose();
 		
@@ -335,7 +350,13 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 						", auth_protocol VARCHAR DEFAULT NULL"+
 						", auth_key VARCHAR DEFAULT NULL"+
 						", priv_protocol VARCHAR DEFAULT NULL"+
-						", priv_key VARCHAR DEFAULT NULL);");
+						", priv_key VARCHAR DEFAULT NULL"+
+						", max_repetitions INT NOT NULL DEFAULT 10);");
+				}
+				
+				try (Statement stmt = c.createStatement()) {
+					stmt.executeUpdate("ALTER TABLE profile"+
+						" ADD COLUMN IF NOT EXISTS max_repetitions INT NOT NULL DEFAULT 10;");
 				}
 				/**END**/
 				
@@ -825,8 +846,8 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 	public boolean addProfile(String name, JSONObject profile) {
 		try (Connection c = this.coreConnPool.getConnection()) {
 			try (PreparedStatement pstmt = c.prepareStatement("INSERT INTO profile"+
-				" (name, protocol, port, version, security, auth_protocol, auth_key, priv_protocol, priv_key)"+
-				" VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?);")) {
+				" (name, protocol, port, version, security, auth_protocol, auth_key, priv_protocol, priv_key, max_repetitions)"+
+				" VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?);")) {
 				pstmt.setString(1, profile.getString("name"));
 				pstmt.setString(2, profile.getString("protocol"));
 				pstmt.setInt(3, profile.getInt("port"));
@@ -836,6 +857,9 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 				pstmt.setString(7, profile.has("authKey")? profile.getString("authKey"): null);
 				pstmt.setString(8, profile.has("privProtocol")? profile.getString("privProtocol"): null);
 				pstmt.setString(9, profile.has("privKey")? profile.getString("privKey"): null);
+				pstmt.setInt(10, profile.has("maxRepetitions")?
+					Math.max(0, Math.min(profile.getInt("maxRepetitions"), SNMPNode.MAX_REPETITIONS)):
+					MAX_REPETITIONS);
 				
 				pstmt.executeUpdate();
 			}
@@ -1082,6 +1106,39 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 		return null;
 	}
 
+	/**
+	 * eventID 부터 기록된 첫 event. 기록에 실패해 비어 있는 eventID 는 건너뛴다.
+	 */
+	@Override
+	public JSONObject getNextEvent(long eventID) {
+		try (Connection c =  this.dataConnPool.getConnection()) {
+			try (PreparedStatement pstmt = c.prepareStatement("SELECT event_id, id, timestamp, origin, level, message, name"+
+				" FROM event"+
+				" WHERE event_id>=?"+
+				" ORDER BY event_id"+
+				" LIMIT 1;")) {
+				pstmt.setLong(1, eventID);
+				
+				try (ResultSet rs = pstmt.executeQuery()) {
+					if (rs.next()) {
+						return new JSONObject()
+							.put("eventID", rs.getLong(1))
+							.put("id", rs.getLong(2))
+							.put("timestamp", rs.getLong(3))
+							.put("origin", rs.getString(4))
+							.put("level", rs.getInt(5))
+							.put("message", rs.getString(6))
+							.put("name", rs.getString(7));
+					}
+				}
+			} 
+		} catch (SQLException sqle) {
+			sqle.printStackTrace();
+		}
+		
+		return null;
+	}
+	
 	@Override
 	public JSONObject getEventByDate(long date) {
 		Calendar calendar = Calendar.getInstance();
@@ -1200,10 +1257,7 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 		c.set(Calendar.DATE, c.get(Calendar.DATE) -1);
 		
 		try {
-			body.put("usage", Files.size(this.root.resolve(String.format("%04d-%02d-%02d.mv.db",
-					c.get(Calendar.YEAR),
-					c.get(Calendar.MONTH) +1,
-					c.get(Calendar.DAY_OF_MONTH)))));
+			body.put("usage", this.store.size(c.getTimeInMillis()));
 		} catch (Exception e) {
 		}
 		
@@ -1222,6 +1276,11 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 		
 		body.put("resource", size);
 		
+		body.put("save", new JSONObject()
+			.put("timestamp", this.batch.getLastSave())
+			.put("time", this.batch.getSaveTime())
+			.put("count", this.batch.getSaveCount()));
+		
 		return body;
 	}
 
@@ -1525,10 +1584,10 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 						for (String oid: oidMap.keySet()) {
 							v = oidMap.get(oid);
 							
-							snmpIndexData.put(oid, v.value);
+							snmpIndexData.put(oid, v.getValue());
 							
 							if (oid.equals("1.3.6.1.4.1.49447.1")) {
-								snmpIndexData.put("1.3.6.1.4.1.49447.2", v.timestamp);
+								snmpIndexData.put("1.3.6.1.4.1.49447.2", v.getTimestamp());
 							}
 							
 							if (v.critical) {
@@ -1665,7 +1724,7 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 					profileData = new JSONObject(),
 					profile;
 				
-				try (ResultSet rs = stmt.executeQuery("SELECT name, protocol, port, version, security, COALESCE(level, 0), auth_protocol, auth_key, priv_protocol, priv_key"+
+				try (ResultSet rs = stmt.executeQuery("SELECT name, protocol, port, version, security, COALESCE(level, 0), auth_protocol, auth_key, priv_protocol, priv_key, max_repetitions"+
 					" FROM profile;")) {
 					while (rs.next()) {
 						profile = new JSONObject()
@@ -1673,7 +1732,8 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 							.put("protocol", rs.getString(2))
 							.put("port", rs.getInt(3))
 							.put("version", rs.getString(4))
-							.put("security", rs.getString(5));
+							.put("security", rs.getString(5))
+							.put("maxRepetitions", rs.getInt(11));
 						
 						if (rs.getInt(6) > 0) {
 							profile.put("level", rs.getInt(6));
@@ -1711,7 +1771,7 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 	@Override
 	public JSONObject getProfile(String name) {
 		try (Connection c = this.coreConnPool.getConnection()) {
-			try (PreparedStatement pstmt = c.prepareStatement("SELECT protocol, port, version, security, COALESCE(level, 0), auth_protocol, auth_key, priv_protocol, priv_key"+ 
+			try (PreparedStatement pstmt = c.prepareStatement("SELECT protocol, port, version, security, COALESCE(level, 0), auth_protocol, auth_key, priv_protocol, priv_key, max_repetitions"+ 
 				" FOM profile"+
 				" WHERE name=?;")) {
 				pstmt.setString(1, name);
@@ -1723,7 +1783,8 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 							.put("protocol", rs.getString(1))
 							.put("port", rs.getInt(2))
 							.put("version", rs.getString(3))
-							.put("security", rs.getString(4));
+							.put("security", rs.getString(4))
+							.put("maxRepetitions", rs.getInt(10));
 					
 						if (rs.getInt(5)> 0) {
 							profile.put("level", rs.getInt(5));
@@ -1757,38 +1818,51 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 	}
 	
 	@Override
-	public synchronized JSONObject getResource(long id, int index, String oid, long date, boolean summary) {
+	public JSONObject getResource(long id, int index, String oid, long date, boolean summary) {
 		Calendar calendar = Calendar.getInstance();
-		JSONObject result = new JSONObject();
-		int year = calendar.get(Calendar.YEAR);
-		int day = calendar.get(Calendar.DAY_OF_YEAR);
 		
 		calendar.setTimeInMillis(date);
 		
-		try (Connection c = year == calendar.get(Calendar.YEAR) && day == calendar.get(Calendar.DAY_OF_YEAR)?
-			this.batch.getCurrentConnection():
-			DriverManager.getConnection(
-			String.format("jdbc:h2:%s\\%04d-%02d-%02d;ACCESS_MODE_DATA=r;IFEXISTS=TRUE;",
-				this.root.toString(),
-				calendar.get(Calendar.YEAR),
-				calendar.get(Calendar.MONTH) +1,
-				calendar.get(Calendar.DAY_OF_MONTH)), "sa", "")) {
-			
-			try (PreparedStatement pstmt = c.prepareStatement(
-				"SELECT value, timestamp FROM rolling"+
-				" WHERE id=? AND _index=? AND oid=?;")) {
-				
-				pstmt.setLong(1, id);
-				pstmt.setString(2, Integer.toString(index));
-				pstmt.setString(3, oid);
-				
-				try (ResultSet rs = pstmt.executeQuery()) {
-					while (rs.next()) {
-						result.put(Long.toString(rs.getLong(2)), rs.getString(1));
-					}
-				}
+		long from = Util.trimDate(calendar).getTimeInMillis();
+		
+		calendar.add(Calendar.DATE, 1);
+		
+		return getResource(id, index, oid, from, calendar.getTimeInMillis() -1, summary);
+	}
+	
+	/**
+	 * 여러 날에 걸친 [from, to] 구간의 rolling 자원을 하나의 series로 읽는다.
+	 * summary 이면 구간 길이에 따라 5분, 1시간, 1일 단위의 min, max, avg, last 를 읽는다.
+	 */
+	@Override
+	public JSONObject getResource(long id, int index, String oid, long from, long to, boolean summary) {
+		JSONObject result = new JSONObject();
+		Rule rule = ruleMap.get(oid);
+		boolean unsigned = rule != null && rule.syntax.equals("Counter64");
+		
+		try {
+			if (summary) {
+				long range = to - from;
+				
+				this.store.summarize(id, Integer.toString(index), oid, from, to,
+					range <= TimeUnit.DAYS.toMillis(2)? TimeUnit.MINUTES.toMillis(5):
+					range <= TimeUnit.DAYS.toMillis(62)? TimeUnit.HOURS.toMillis(1):
+					TimeUnit.DAYS.toMillis(1),
+					(timestamp, min, max, avg, last) -> {
+						result.put(Long.toString(timestamp), new JSONObject()
+							.put("min", unsigned? Long.toUnsignedString(min): Long.toString(min))
+							.put("max", unsigned? Long.toUnsignedString(max): Long.toString(max))
+							.put("avg", unsigned? Long.toUnsignedString(avg): Long.toString(avg))
+							.put("last", unsigned? Long.toUnsignedString(last): Long.toString(last)));
+					});
 			}
-		} catch (SQLException sqle) {
+			else {
+				this.store.get(id, Integer.toString(index), oid, from, to, (timestamp, value) -> {
+					result.put(Long.toString(timestamp), unsigned? Long.toUnsignedString(value): Long.toString(value));
+				});
+			}
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
 		}
 		
 		return result;
@@ -1838,12 +1912,12 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 	@Override
 	public JSONObject getTop(JSONArray idList, JSONObject resources) {
 		List<Max> sorted;
-		List<Long> target = new ArrayList<>();
+		Set<Long> target = new HashSet<>();
 		JSONObject request;
 		JSONArray top;
 		Max max;
 		String resource;
-		Parser parser;
+		Parseable parser;
 		
 		for (int i=0, _i=idList.length(); i<_i; i++) {
 			target.add(idList.getLong(i));
@@ -1858,22 +1932,19 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 			
 			resource = resource.toUpperCase();
 			
-			try {
-				parser = Parser.valueOf(resource.replace(RATE_SUFFIX, ""));
-			} catch (IllegalArgumentException iae) {
+			parser = this.parsers.get(resource.replace(RATE_SUFFIX, ""));
+			
+			if (parser == null) {
 				continue;
 			}
 			
-			sorted = parser.getInstance()
-				.getTop(target, resource.indexOf(RATE_SUFFIX) > -1? true: false);
+			sorted = parser.getTop(target, resource.indexOf(RATE_SUFFIX) > -1? true: false, request.getInt("count"));
 			
-			for (int i=0, _i = Math.min(request.getInt("count"), sorted.size()); i<_i; i++) {
+			for (int i=0, _i = sorted.size(); i<_i; i++) {
 				max = sorted.get(i);
 				
-				top.put(new JSONObject().put("id", max.id).put("index", max.index).put("value", max.value).put("rate", max.rate));
+				top.put(new JSONObject().put("id", max.id).put("index", max.index).put("value", Long.toString(max.value)).put("rate", max.rate));
 			}
-			
-			
 		}
 		
 		return resources;
@@ -1948,54 +2019,30 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 		if (status) {
 			String
 				oid = "1.3.6.1.4.1.49447.1",
-				index = "0",
-				value = Long.toString(rtt);
+				index = "0";
 			long timestamp = calendar.getTimeInMillis();
-		
-			try {
-				try(Connection c = this.dataConnPool.getConnection()) {
-					try (PreparedStatement pstmt = c.prepareStatement("MERGE INTO resource"+
-						" (id, oid, _index, value, timestamp)"+
-						" KEY(id, oid, _index)"+
-						" VALUES(?, ?, ?, ?, ?);")) {
-						pstmt.setLong(1, id);
-						pstmt.setString(2, oid);
-						pstmt.setString(3, index);
-						pstmt.setString(4, value);
-						pstmt.setLong(5, timestamp);
-						
-						pstmt.executeUpdate();
-					}
-					
-					mergeResourceMap(id, index, oid, value, timestamp);
-					
-					Map<String, Map<String, Value>> indexMap = this.resourceMap.get(id);
+			
+			this.writer.write(id, index, oid, mergeResourceMap(id, index, oid, rtt, timestamp));
+			
+			Map<String, Map<String, Value>> indexMap = this.resourceMap.get(id);
+			
+			if (indexMap != null) {
+				Parseable parser = this.parsers.get("RESPONSETIME");
+				CriticalEvent event = parser.parse(id, index, indexMap.get(index));
+				
+				// ping thread 가 parse 한 node 의 응답 시간은 같은 thread 에서 게시한다.
+				parser.submit(id);
+				
+				if (event != null) {
+					// critical 값은 writer가 resourceMap의 Value에서 함께 기록한다.
+					this.writer.write(event.id, event.index, event.oid, indexMap.get(event.index).get(event.oid));
 					
-					if (indexMap != null) {
-						CriticalEvent event = Parser.RESPONSETIME.getInstance().parse(id, index, indexMap.get(index));
-						
-						if (event != null) {
-							try (PreparedStatement pstmt = c.prepareStatement("UPDATE resource"+
-								" SET critical=?"+
-								" WHERE id=? AND _index=? AND oid=?;")) {
-								pstmt.setBoolean(1, event.critical);
-								pstmt.setLong(2, event.id);
-								pstmt.setString(3, event.index);
-								pstmt.setString(4, event.oid);
-								
-								pstmt.executeUpdate();
-							}
-							
-							sendEvent(event);
-						}
-					}
+					sendEvent(event);
 				}
-			} catch(SQLException sqle) {
-				sqle.printStackTrace();
 			}
 		}
 		else {
-			Parser.RESPONSETIME.getInstance().reset(id);
+			this.parsers.get("RESPONSETIME").reset(id);
 		}
 		
 		if (oldStatus != null && status != oldStatus) {
@@ -2018,6 +2065,36 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 		}
 	}
 	
+	/**
+	 * index 마다 한 번씩 돌면서 그 index 의 OID 를 구독한 parser 에게만 보여준다.
+	 * critical 값은 writer 가 resourceMap 의 Value 에서 한 번의 batch 로 기록한다.
+	 */
+	private void parse(long id, Map<String, Map<String, Value>> indexMap) {
+		List<CriticalEvent> events = new ArrayList<>();
+		Parseable cpu = this.parsers.get("HRPROCESSORLOAD");
+		Map<String, Value> oidMap;
+		
+		this.parsers.parse(id, indexMap, events);
+		
+		Integer load = cpu instanceof HRProcessorLoad? ((HRProcessorLoad)cpu).getLoad(id): null;
+		
+		this.parsers.submit(id);
+		
+		for (CriticalEvent e : events) {
+			oidMap = indexMap.get(e.index);
+			
+			if (oidMap != null && oidMap.get(e.oid) != null) {
+				this.writer.write(e.id, e.index, e.oid, oidMap.get(e.oid));
+			}
+			
+			sendEvent(e);
+		}
+		
+		if (load != null) {
+			informResourceEvent(id, new OID("1.3.6.1.2.1.25.3.3.1.2"), new OID("0"), new Integer32(load));
+		}
+	}
+	
 	@Override
 	public void informSNMPEvent(long id, int code) {
 		Integer oldCode = this.snmpMap.get(id);
@@ -2028,55 +2105,23 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 		}
 		
 		if (code == SnmpConstants.SNMP_ERROR_SUCCESS) {
-			Parseable parser;
-			CriticalEvent event;
-			
-			try(Connection c = this.dataConnPool.getConnection()) {
-				try (PreparedStatement pstmt = c.prepareStatement("UPDATE resource"+
-					" SET critical=?"+
-					" WHERE id=? AND _index=? AND oid=?;")) {
-					
-					for (Parser p : Parser.values()) {
-						parser = p.getInstance();
-				
-						if (!(parser instanceof ResponseTime)) {
-							for (String index : indexMap.keySet()) {
-								event = parser.parse(id, index, indexMap.get(index));
-								
-								if (event != null) {
-									pstmt.setBoolean(1, event.critical);
-									pstmt.setLong(2, event.id);
-									pstmt.setString(3, event.index);
-									pstmt.setString(4, event.oid);
-									
-									pstmt.executeUpdate();
-									
-									sendEvent(event);
-								}
-								
-								if (parser instanceof HRProcessorLoad) {
-									Integer load = ((HRProcessorLoad)parser).getLoad(id);
-									
-									if (load != null) {
-										informResourceEvent(id, new OID("1.3.6.1.2.1.25.3.3.1.2"), new OID("0"), new Integer32(load));
-									}
-								}
-							}
+			// 이전 결과를 아직 parse 중인 node 는 이번 주기를 건너뛴다.
+			if (this.parsing.add(id)) {
+				try {
+					this.parserPool.execute(() -> {
+						try {
+							parse(id, indexMap);
+						} finally {
+							this.parsing.remove(id);
 						}
-						
-						parser.submit(id);
-					}
+					});
+				} catch (RejectedExecutionException ree) {
+					this.parsing.remove(id);
 				}
-			}catch(SQLException sqle) {
-				sqle.printStackTrace();
 			}
 		}
 		else {
-			for (Parser parser : Parser.values()) {
-				if (!parser.equals(Parser.RESPONSETIME)) {
-					parser.getInstance().reset(id);
-				}
-			}
+			this.parsers.reset(id);
 		}
 	
 		if (oldCode != null && oldCode != code) {
@@ -2130,6 +2175,13 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 		}
 		
 		rule = ruleMap.get(oid);
+		// resourceMap 의 oid key 는 rule 의 oid 를 공유한다.
+		oid = rule.oid;
+		
+		// 숫자 값은 문자열을 거치지 않고 long 으로 기록한다.
+		long number = 0;
+		boolean numeric = false;
+		boolean unsigned = false;
 		
 		switch (rule.syntax) {
 			case "DisplayString":
@@ -2142,17 +2194,33 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 				break;
 			case "TimeTicks":
 				if (variable instanceof TimeTicks) {
-					value = Long.toString(((TimeTicks)variable).toMilliseconds());
-				} else {
-					value = variable.toString();
+					number = ((TimeTicks)variable).toMilliseconds();
+					numeric = true;
 				}
 				
+				value = null;
+				
 				break;
 			default:
-				value = variable.toString();
+				if (variable instanceof Integer32 || variable instanceof UnsignedInteger32 || variable instanceof Counter64) {
+					number = variable.toLong();
+					numeric = true;
+					// Counter64 는 2^63 이상이면 long 으로 음수가 된다
+					unsigned = variable instanceof Counter64;
+				}
+				
+				value = null;
+		}
+		
+		if (value == null && !numeric) {
+			value = variable.toString();
 		}
 		
 		if (rule.onChange){
+			if (value == null) {
+				value = unsigned? Long.toUnsignedString(number): Long.toString(number);
+			}
+			
 			Map<String, Map<String, Value>> indexMap = this.resourceMap.get(id);
 			
 			if (indexMap != null) {
@@ -2161,17 +2229,17 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 				if (oidMap != null) {
 					Value v = oidMap.get(oid);
 					
-					if (v != null && !v.value.equals(value)) {
+					if (v != null && !v.getValue().equals(value)) {
 						if (rule.name.equals("ifOperStatus")) {
 							Value ifName = oidMap.get("1.3.6.1.2.1.31.1.1.1.1");
 							
 							if (ifName != null) {
 								if (Integer.valueOf(value) == 1) {
 									sendEvent(new Event(Event.CHANGE, id, Event.NORMAL,
-										String.format("Interface %s UP.", ifName.value)));
+										String.format("Interface %s UP.", ifName.getValue())));
 								} else {
 									sendEvent(new Event(Event.CHANGE, id, Event.ERROR,
-										String.format("Interface %s DOWN.", ifName.value)));
+										String.format("Interface %s DOWN.", ifName.getValue())));
 								}
 							} else {
 								if (Integer.valueOf(value) == 1) {
@@ -2192,24 +2260,9 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 			}
 		}
 		
-		try(Connection c = this.dataConnPool.getConnection()) {
-			try (PreparedStatement pstmt = c.prepareStatement("MERGE INTO resource"+
-				" (id, oid, _index, value, timestamp)"+
-				" KEY(id, oid, _index)"+
-				" VALUES(?, ?, ?, ?, ?);")) {
-				pstmt.setLong(1, id);
-				pstmt.setString(2, oid);
-				pstmt.setString(3, index);
-				pstmt.setString(4, value);
-				pstmt.setLong(5, timestamp);
-				
-				pstmt.executeUpdate();
-			}
-			
-			mergeResourceMap(id, index, oid, value, timestamp);
-		} catch (SQLException sqle) {
-			sqle.printStackTrace();
-		}
+		this.writer.write(id, index, oid, numeric?
+			mergeResourceMap(id, index, oid, number, unsigned, timestamp):
+			mergeResourceMap(id, index, oid, value, timestamp));
 	}
 	
 	public void informTestEvent(long id, String ip, Protocol protocol, Object result) {
@@ -2284,34 +2337,45 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 	}
 	
 	private Value mergeResourceMap(long id, String index, String oid, String value, long timestamp)  {
-		Map<String, Map<String, Value>> indexMap = this.resourceMap.get(id);
-		Map<String, Value> oidMap;
-		Value v;
+		Value v = getValue(id, index, oid);
 		
-		if (indexMap == null) {
-			this.resourceMap.put(id, indexMap = new ConcurrentHashMap<>());
-			
-			indexMap.put(index, oidMap = new ConcurrentHashMap<>());
-		}
-		else {
-			oidMap = indexMap.get(index);
-			
-			if (oidMap == null) {
-				indexMap.put(index, oidMap = new ConcurrentHashMap<>());
-			}
+		if (v == null) {
+			return putValue(id, index, oid, new Value(timestamp, value));
 		}
 		
-		v = oidMap.get(oid);
+		v.set(timestamp, value);
+		
+		return v;
+	}
+	
+	private Value mergeResourceMap(long id, String index, String oid, long value, long timestamp)  {
+		return mergeResourceMap(id, index, oid, value, false, timestamp);
+	}
+	
+	private Value mergeResourceMap(long id, String index, String oid, long value, boolean unsigned, long timestamp)  {
+		Value v = getValue(id, index, oid);
 		
 		if (v == null) {
-			v = new Value(timestamp, value);
-			
-			oidMap.put(oid, v);	
-		} else {
-			v.value = value;
-			v.timestamp = timestamp;
+			return putValue(id, index, oid, new Value(timestamp, value, unsigned));
 		}
 		
+		v.set(timestamp, value, unsigned);
+		
+		return v;
+	}
+	
+	private Value getValue(long id, String index, String oid) {
+		Map<String, Map<String, Value>> indexMap = this.resourceMap.get(id);
+		Map<String, Value> oidMap;
+		
+		return indexMap == null || (oidMap = indexMap.get(index)) == null? null: oidMap.get(oid);
+	}
+	
+	private Value putValue(long id, String index, String oid, Value v) {
+		this.resourceMap.computeIfAbsent(id, k -> new ConcurrentHashMap<>())
+			.computeIfAbsent(index, k -> new ConcurrentHashMap<>())
+			.put(oid, v);
+		
 		return v;
 	}
 	
@@ -2395,14 +2459,14 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 				}	
 			}
 					
-			try (PreparedStatement pstmt = c.prepareStatement("SELECT port, version, security, COALESCE(level, 0)"+
+			try (PreparedStatement pstmt = c.prepareStatement("SELECT port, version, security, COALESCE(level, 0), max_repetitions"+
 				" FROM profile"+
 				" WHERE name=?;")) {
 				pstmt.setString(1, name);
 				
 				try (ResultSet rs = pstmt.executeQuery()) {
 					if (rs.next()) {
-						this.nodeManager.createNode(id, ip, rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4));
+						this.nodeManager.createNode(id, ip, rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4), rs.getInt(5));
 					}
 				}			
 			}
@@ -2755,6 +2819,9 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 				}
 			}
 			
+			// 아직 기록되지 않은 sample 이 지운 자원을 되살리지 않도록 버린다.
+			this.writer.discard(id, index, oid);
+			
 			mergeResourceMap(id, index, oid);
 			
 			return true;
@@ -3593,7 +3660,7 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 			}
 			
 			try (Statement stmt = c.createStatement()) {
-				try (ResultSet rs = stmt.executeQuery("SELECT id, ip, m.protocol, port, version, security, level, status, snmp"+
+				try (ResultSet rs = stmt.executeQuery("SELECT id, ip, m.protocol, port, version, security, level, status, snmp, max_repetitions"+
 					" FROM monitor AS m"+
 					" LEFT JOIN profile AS p"+
 					" ON m.protocol = p.name;")) {
@@ -3629,7 +3696,8 @@ public class H2Agent implements Commander, NodeEventReceivable, Listener, Closea
 									rs.getInt(4),
 									rs.getString(5),
 									rs.getString(6),
-									rs.getInt(7));
+									rs.getInt(7),
+									rs.getInt(10));
 								
 								this.snmpMap.put(id, rs.getInt(9));
 							}
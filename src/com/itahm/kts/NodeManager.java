@@ -6,7 +6,11 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.snmp4j.MessageDispatcher;
+import org.snmp4j.MessageDispatcherImpl;
 import org.snmp4j.Snmp;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
 import org.snmp4j.mp.MPv3;
 import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.security.AuthMD5;
@@ -21,6 +25,8 @@ import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.Variable;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
+import org.snmp4j.util.MultiThreadedMessageDispatcher;
+import org.snmp4j.util.ThreadPool;
 
 import com.itahm.kts.SeedNode.Arguments;
 import com.itahm.kts.SeedNode.Protocol;
@@ -28,15 +34,23 @@ import com.itahm.nms.NodeEventReceivable;
 import com.itahm.nms.node.Event;
 import com.itahm.nms.node.ICMPNode;
 import com.itahm.nms.node.Node;
+import com.itahm.nms.node.PollScheduler;
 import com.itahm.nms.node.SNMPDefaultNode;
+import com.itahm.nms.node.SNMPNode;
 import com.itahm.nms.node.SNMPV3Node;
+import com.itahm.nms.node.Scheduler;
 import com.itahm.nms.node.TCPNode;
 import com.itahm.util.Listener;
 
 public class NodeManager extends Snmp implements Listener, Closeable {
 	
+	private final static int POLLER_COUNT = 256;
+	private final static int DISPATCHER_COUNT = 8;
+	
 	private final NodeEventReceivable agent;
 	private final Map<Long, Node> nodeMap = new ConcurrentHashMap<>();
+	private final Scheduler scheduler;
+	private final ThreadPool dispatcherPool;
 	private final int nodeLimitCount;
 	private Boolean isClosed = false;
 	private long interval;
@@ -44,9 +58,27 @@ public class NodeManager extends Snmp implements Listener, Closeable {
 	private int timeout;
 	
 	public NodeManager(NodeEventReceivable agent, long interval, int timeout, int retry, int limit) throws IOException {
-		super(new DefaultUdpTransportMapping());
+		this(agent, interval, timeout, retry, limit, new PollScheduler(POLLER_COUNT));
+	}
+	
+	public NodeManager(NodeEventReceivable agent, long interval, int timeout, int retry, int limit, Scheduler scheduler) throws IOException {
+		this(agent, interval, timeout, retry, limit, scheduler, ThreadPool.create("ITAhM SNMP Dispatcher", DISPATCHER_COUNT));
+	}
+	
+	private NodeManager(NodeEventReceivable agent, long interval, int timeout, int retry, int limit, Scheduler scheduler, ThreadPool pool) throws IOException {
+		super(new MultiThreadedMessageDispatcher(pool, new MessageDispatcherImpl()), new DefaultUdpTransportMapping());
 		
 		this.agent = agent;
+		this.scheduler = scheduler;
+		this.dispatcherPool = pool;
+		
+		MessageDispatcher dispatcher = super.getMessageDispatcher();
+		
+		dispatcher.addMessageProcessingModel(new MPv2c());
+		dispatcher.addMessageProcessingModel(new MPv1());
+		dispatcher.addMessageProcessingModel(new MPv3());
+		
+		SecurityProtocols.getInstance().addDefaultProtocols();
 		
 		this.interval = interval;
 		this.retry = retry;
@@ -110,6 +142,9 @@ public class NodeManager extends Snmp implements Listener, Closeable {
 			}
 			
 			System.out.println();
+			
+			this.scheduler.close();
+			this.dispatcherPool.stop();
 		}
 		
 		System.out.println("NodeManager down.");
@@ -124,6 +159,7 @@ public class NodeManager extends Snmp implements Listener, Closeable {
 		
 		node.addEventListener(this);
 		
+		node.setScheduler(this.scheduler);
 		node.setRetry(this.retry);
 		node.setTimeout(this.timeout);
 		
@@ -138,21 +174,28 @@ public class NodeManager extends Snmp implements Listener, Closeable {
 	 * @param version
 	 * @param security
 	 * @param level
+	 * @param maxRepetitions GETBULK max-repetitions, 0 이면 GETNEXT
 	 * @throws IOException
 	 */
-	public void createNode(long id, String ip, int port, String version, String security, int level) throws IOException {
+	public void createNode(long id, String ip, int port, String version, String security, int level, int maxRepetitions) throws IOException {
+		SNMPNode node;
+		
 		switch(version) {
 		case "v3":
-			createNode(id, new SNMPV3Node(this, id, ip, port, security, level));
+			node = new SNMPV3Node(this, id, ip, port, security, level);
 			
 			break;
 		case "v2c":
-			createNode(id, new SNMPDefaultNode(this, id, ip, port, security, SnmpConstants.version2c));
+			node = new SNMPDefaultNode(this, id, ip, port, security, SnmpConstants.version2c);
 			
 			break;
 		default:
-			createNode(id, new SNMPDefaultNode(this, id, ip, port, security, SnmpConstants.version1));
+			node = new SNMPDefaultNode(this, id, ip, port, security, SnmpConstants.version1);
 		}
+		
+		node.setMaxRepetitions(maxRepetitions);
+		
+		createNode(id, node);
 	}
 	
 	/**
@@ -4,112 +4,52 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.Calendar;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.TimeUnit;
 
-import org.h2.jdbcx.JdbcConnectionPool;
-
 import com.itahm.nms.Bean.Rule;
 import com.itahm.nms.Bean.Value;
+import com.itahm.nms.Bean.Value.Sample;
+import com.itahm.nms.series.SeriesStore;
 import com.itahm.util.Util;
 
 public class Batch extends Timer {
 
-	private final String JDBC_URL = "jdbc:h2:%s";
-	
 	private final Path path;
+	private final SeriesStore store;
 	private final Map<Long, Map<String, Map<String, Value>>> resourceMap;
 	private final Map<String, Rule> ruleMap;
 	private Saver saver;
 	private int storeDate = 0;
-	private JdbcConnectionPool connPool;
-	private JdbcConnectionPool nextPool;
+	private volatile long saveTime = 0;
+	private volatile long saveCount = 0;
+	private volatile long lastSave = 0;
 	
-	public Batch(Path path, Map<Long, Map<String, Map<String, Value>>> resourceMap, Map<String, Rule> ruleMap) throws SQLException {
+	public Batch(Path path, SeriesStore store, Map<Long, Map<String, Map<String, Value>>> resourceMap, Map<String, Rule> ruleMap) {
 		super("Batch Scheduler");
 
 		this.path = path;
+		this.store = store;
 		this.resourceMap = resourceMap;
 		this.ruleMap = ruleMap;
 		
 		Calendar calendar = Calendar.getInstance();
 		
-		connPool = JdbcConnectionPool.create(String.format(JDBC_URL,
-			path.resolve(Util.toDateString(calendar.getTime())).toString()), "sa", "");
-		
 		calendar.add(Calendar.DATE, 1);
 		
-		nextPool = 	JdbcConnectionPool.create(String.format(JDBC_URL,
-			path.resolve(Util.toDateString(calendar.getTime())).toString()), "sa", "");
-		
-		createRollingTable();
-		
 		super.scheduleAtFixedRate(new Roller(this), Util.trimDate(calendar).getTime(), TimeUnit.DAYS.toMillis(1));
 		super.scheduleAtFixedRate(new Remover(this), Util.trimDate(calendar).getTime(), TimeUnit.DAYS.toMillis(1));
 	}
 	
-	@Override
-	public void cancel() {
-		super.cancel();
-		
-		synchronized(this.connPool) {
-			this.connPool.dispose();
-			
-			this.connPool = null;
-		}
-		
-		this.nextPool.dispose();
-	}
-	
-	private void createRollingTable() {
-		long start = System.currentTimeMillis();
-		
-		try (Connection c = connPool.getConnection()) {
-			try (Statement stmt = c.createStatement()) {
-				stmt.executeUpdate("CREATE TABLE IF NOT EXISTS rolling"+
-					" (id BIGINT NOT NULL"+
-					", oid VARCHAR NOT NULL"+
-					", _index VARCHAR NOT NULL"+
-					", value VARCHAR NOT NULL"+
-					", timestamp BIGINT DEFAULT NULL);");
-			}
-			
-			System.out.format("Rolling database created in %dms.\n", System.currentTimeMillis() - start);
-		} catch (SQLException sqle) {
-			sqle.printStackTrace();
-		}
-	}
-	
 	private void reset() {
-		JdbcConnectionPool pool;
-		
-		synchronized(this.connPool) {
-			pool = this.connPool;
-			
-			this.connPool = this.nextPool;
+		try {
+			this.store.roll();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
 		}
-		
-		pool.dispose();
-		
-		createRollingTable();
-		
-		Calendar calendar = Calendar.getInstance();
-		
-		calendar.add(Calendar.DATE, 1);
-		
-		this.nextPool = JdbcConnectionPool.create(String.format(JDBC_URL,
-			this.path.resolve(Util.toDateString(calendar.getTime())).toString()), "sa", "");
-	}
-	
-	public Connection getCurrentConnection() throws SQLException {
-		return this.connPool.getConnection();
 	}
 	
 	private void remove() {
@@ -124,6 +64,9 @@ public class Batch extends Timer {
 		
 		millis = c.getTimeInMillis();
 		
+		// 열려 있는 지난 Segment는 삭제할 수 없으므로 먼저 닫는다.
+		this.store.release();
+		
 		try {
 			Files.list(this.path).
 				filter(Files::isRegularFile).forEach(p -> {
@@ -154,6 +97,18 @@ public class Batch extends Timer {
 		super.schedule(this.saver, period, period);
 	}
 	
+	public long getSaveTime() {
+		return this.saveTime;
+	}
+	
+	public long getSaveCount() {
+		return this.saveCount;
+	}
+	
+	public long getLastSave() {
+		return this.lastSave;
+	}
+	
 	public void setStoreDate(int period) {
 		this.storeDate = period;
 		
@@ -164,44 +119,46 @@ public class Batch extends Timer {
 		Map<String, Map<String, Value>> indexMap;
 		Map<String, Value> oidMap;
 		Value v;
+		Sample sample = new Sample();
 		Rule rule;
+		long start = System.currentTimeMillis();
+		long count = 0;
 		
-		synchronized(this.connPool) {
-			if (this.connPool == null) {
-				return;
-			}
-			
-			try(Connection c = this.connPool.getConnection()) {
-				for (Long id: this.resourceMap.keySet()) {
-					 indexMap = this.resourceMap.get(id);
+		try {
+			for (Long id: this.resourceMap.keySet()) {
+				 indexMap = this.resourceMap.get(id);
+				 
+				 for (String index : indexMap.keySet()) {
+					 oidMap = indexMap.get(index);
 					 
-					 for (String index : indexMap.keySet()) {
-						 oidMap = indexMap.get(index);
+					 for (String oid : oidMap.keySet()) {
+						 v = oidMap.get(oid);
+						 rule = ruleMap.get(oid);
 						 
-						 for (String oid : oidMap.keySet()) {
-							 v = oidMap.get(oid);
-							 rule = ruleMap.get(oid);
-							 
-							 if (rule != null && rule.rolling) {
-								 try (PreparedStatement pstmt = c.prepareStatement("INSERT INTO rolling"+
-									" (id, oid, _index, value, timestamp)"+
-									" VALUES (?, ?, ?, ?, ?);")) {
-									pstmt.setLong(1, id);
-									pstmt.setString(2, oid);
-									pstmt.setString(3, index);
-									pstmt.setString(4, v.value);
-									pstmt.setLong(5, v.timestamp);
-									
-									pstmt.executeUpdate();
-								}
-							 }
+						 if (rule != null && rule.rolling) {
+							v.read(sample);
+							
+							if (sample.numeric) {
+								this.store.put(id, index, oid, sample.timestamp, sample.number, sample.unsigned);
+								
+								count++;
+							}
 						 }
 					 }
-				}
-			} catch (SQLException sqle) {
-				sqle.printStackTrace();
+				 }
 			}
+			
+			this.store.sync();
+			
+			// 날짜가 바뀐 뒤 처음 저장하면서 지난 날의 sample이 모두 기록되었다.
+			this.store.seal();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
 		}
+		
+		this.lastSave = start;
+		this.saveTime = System.currentTimeMillis() - start;
+		this.saveCount = count;
 	}
 	
 	private static class Roller extends TimerTask {
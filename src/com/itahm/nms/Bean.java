@@ -1,37 +1,241 @@
 package com.itahm.nms;
 
+import java.lang.invoke.VarHandle;
+
 import com.itahm.json.JSONObject;
 
 public class Bean {
+	/**
+	 * 숫자 값은 받을 때 한 번만 해석해 long 으로 보관하고, 문자열은 필요할 때 만든다.
+	 * parser 가 만든 값은 문자열 없이 long 으로만 기록된다.
+	 */
 	public static class Value {
-		public long timestamp;
-		public String value;
 		public int limit;
 		public boolean critical;
+		// sample 마다 객체를 만들지 않도록 seqlock 으로 보호한다. 쓰는 동안 홀수이고,
+		// 읽는 쪽은 읽기 전후의 version 이 같을 때의 값만 쓴다.
+		private volatile int version = 0;
+		private long timestamp;
+		private long number;
+		private boolean numeric;
+		private boolean unsigned;
+		// 문자열로 받은 값. 숫자로 받은 값은 읽을 때 문자열로 만든다.
+		private String text;
 		
 		public Value (long timestamp, String value) {
 			this(timestamp, value, 0, false);
 		}
 		
+		public Value (long timestamp, long value) {
+			set(timestamp, value);
+		}
+		
+		public Value (long timestamp, long value, boolean unsigned) {
+			set(timestamp, value, unsigned);
+		}
+		
 		public Value (long timestamp, String value, int limit, boolean critical) {
-			this.timestamp = timestamp;
-			this.value = value;
+			set(timestamp, value);
+			
 			this.limit = limit;
 			this.critical = critical;
 		}
+		
+		public synchronized void set(long timestamp, String value) {
+			this.version++;
+			
+			VarHandle.storeStoreFence();
+			
+			this.timestamp = timestamp;
+			this.text = value;
+			
+			parse(value);
+			
+			this.version++;
+		}
+		
+		public void set(long timestamp, long value) {
+			set(timestamp, value, false);
+		}
+		
+		/**
+		 * @param unsigned Counter64 처럼 2^63 이상일 수 있는 값
+		 */
+		public synchronized void set(long timestamp, long value, boolean unsigned) {
+			this.version++;
+			
+			VarHandle.storeStoreFence();
+			
+			this.timestamp = timestamp;
+			this.number = value;
+			this.numeric = true;
+			this.unsigned = unsigned;
+			this.text = null;
+			
+			this.version++;
+		}
+		
+		/**
+		 * timestamp 와 값을 함께 읽는다.
+		 */
+		public void read(Sample sample) {
+			int version;
+			
+			do {
+				version = begin();
+				
+				sample.timestamp = this.timestamp;
+				sample.number = this.number;
+				sample.numeric = this.numeric;
+				sample.unsigned = this.unsigned;
+				sample.text = this.text;
+			} while (!validate(version));
+		}
+		
+		public long getTimestamp() {
+			long timestamp;
+			int version;
+			
+			do {
+				version = begin();
+				
+				timestamp = this.timestamp;
+			} while (!validate(version));
+			
+			return timestamp;
+		}
+		
+		public String getValue() {
+			String text;
+			long number;
+			boolean unsigned;
+			int version;
+			
+			do {
+				version = begin();
+				
+				text = this.text;
+				number = this.number;
+				unsigned = this.unsigned;
+			} while (!validate(version));
+			
+			return toString(text, number, unsigned);
+		}
+		
+		public boolean isNumeric() {
+			boolean numeric;
+			int version;
+			
+			do {
+				version = begin();
+				
+				numeric = this.numeric;
+			} while (!validate(version));
+			
+			return numeric;
+		}
+		
+		/**
+		 * 숫자가 아니면 0. Counter64 처럼 long 범위를 넘는 값은 unsigned 로 담는다.
+		 */
+		public long longValue() {
+			long number;
+			boolean numeric;
+			int version;
+			
+			do {
+				version = begin();
+				
+				number = this.number;
+				numeric = this.numeric;
+			} while (!validate(version));
+			
+			return numeric? number: 0;
+		}
+		
+		private int begin() {
+			int version;
+			
+			while (((version = this.version) & 1) != 0) {
+				Thread.onSpinWait();
+			}
+			
+			return version;
+		}
+		
+		private boolean validate(int version) {
+			VarHandle.loadLoadFence();
+			
+			return this.version == version;
+		}
+		
+		private void parse(String value) {
+			int length = value == null? 0: value.length();
+			int i = length > 0 && value.charAt(0) == '-'? 1: 0;
+			
+			this.number = 0;
+			this.numeric = false;
+			this.unsigned = false;
+			
+			if (length == i || length > 20) {
+				return;
+			}
+			
+			for (int j=i; j<length; j++) {
+				if (value.charAt(j) < '0' || value.charAt(j) > '9') {
+					return;
+				}
+			}
+			
+			try {
+				if (i > 0 || length < 19) {
+					this.number = Long.parseLong(value);
+				}
+				else {
+					this.number = Long.parseUnsignedLong(value);
+					this.unsigned = true;
+				}
+				
+				this.numeric = true;
+			} catch (NumberFormatException nfe) {
+			}
+		}
+		
+		private static String toString(String text, long number, boolean unsigned) {
+			return text != null? text: unsigned? Long.toUnsignedString(number): Long.toString(number);
+		}
+		
+		/**
+		 * Value.read 로 채우는 값. 여러 Value 를 읽을 때 하나를 다시 쓴다.
+		 */
+		public static class Sample {
+			public long timestamp;
+			public long number;
+			public boolean numeric;
+			public boolean unsigned;
+			private String text;
+			
+			public String getValue() {
+				return Value.toString(this.text, this.number, this.unsigned);
+			}
+			
+			public long longValue() {
+				return this.numeric? this.number: 0;
+			}
+		}
 	}
 	
 	public static class Max {
 		public final long id;
 		public final int index;
-		public final String value;
+		public final long value;
 		public final long rate;
 		
-		public Max (long id, int index, String value) {
+		public Max (long id, int index, long value) {
 			this(id,  index,  value, -1);
 		}
 		
-		public Max (long id, int index, String value, long rate) {
+		public Max (long id, int index, long value, long rate) {
 			this.id = id;
 			this.index = index;
 			this.value = value;
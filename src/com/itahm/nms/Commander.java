@@ -21,6 +21,7 @@ public interface Commander extends Closeable {
 	public JSONObject getCritical(long id, String index, String oid);
 	public JSONObject getEvent(long eventID);
 	public JSONObject getEventByDate(long date);
+	public JSONObject getNextEvent(long eventID);
 	public JSONObject getIcon();
 	public JSONObject getIcon(String type);
 	public JSONObject getInformation();
@@ -34,6 +35,7 @@ public interface Commander extends Closeable {
 	public JSONObject getProfile();
 	public JSONObject getProfile(String name);
 	public JSONObject getResource(long id, int index, String oid, long date, boolean summary);
+	public JSONObject getResource(long id, int index, String oid, long from, long to, boolean summary);
 	public JSONObject getSetting();
 	public JSONObject getSetting(String key);
 	public JSONObject getTop(JSONArray list, JSONObject resources);
@@ -0,0 +1,153 @@
+package com.itahm.nms;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import com.itahm.nms.Bean.Value;
+import com.itahm.nms.Bean.Value.Sample;
+import com.itahm.nms.series.Key;
+
+/**
+ * resource 테이블 write-behind.
+ * 같은 (id, oid, _index)의 변경은 하나로 합쳐지고 주기마다 하나의 transaction으로 기록된다.
+ * 실패한 batch는 다음 주기에 다시 시도한다.
+ */
+public class ResourceWriter extends Timer {
+
+	private final static int BATCH_SIZE = 1000;
+	
+	private final JdbcConnectionPool connPool;
+	private final Queue<Key> queue = new ConcurrentLinkedQueue<>();
+	private final Map<Key, Value> pending = new ConcurrentHashMap<>();
+	
+	public ResourceWriter(JdbcConnectionPool connPool, long period) {
+		super("Resource Writer");
+		
+		this.connPool = connPool;
+		
+		super.schedule(new Flusher(this), period, period);
+	}
+	
+	@Override
+	public void cancel() {
+		super.cancel();
+		
+		flush();
+	}
+	
+	public void write(long id, String index, String oid, Value value) {
+		Key key = new Key(id, index, oid);
+		
+		if (this.pending.put(key, value) == null) {
+			this.queue.offer(key);
+		}
+	}
+	
+	/**
+	 * 아직 기록되지 않은 값을 버린다. queue 에 남은 key 는 flush 에서 건너뛴다.
+	 */
+	public void discard(long id, String index, String oid) {
+		this.pending.remove(new Key(id, index, oid));
+	}
+	
+	public int size() {
+		return this.pending.size();
+	}
+	
+	private synchronized void flush() {
+		if (this.queue.isEmpty()) {
+			return;
+		}
+		
+		List<Key> keys = new ArrayList<>();
+		List<Value> values = new ArrayList<>();
+		Key key;
+		Value v;
+		
+		while ((key = this.queue.poll()) != null) {
+			v = this.pending.remove(key);
+			
+			if (v != null) {
+				keys.add(key);
+				values.add(v);
+			}
+		}
+		
+		try (Connection c = this.connPool.getConnection()) {
+			c.setAutoCommit(false);
+			
+			try (PreparedStatement pstmt = c.prepareStatement("MERGE INTO resource"+
+				" (id, oid, _index, value, critical, timestamp)"+
+				" KEY(id, oid, _index)"+
+				" VALUES(?, ?, ?, ?, ?, ?);")) {
+				Sample sample = new Sample();
+				int count = 0;
+				
+				for (int i=0, _i=keys.size(); i<_i; i++) {
+					key = keys.get(i);
+					v = values.get(i);
+					
+					v.read(sample);
+					
+					pstmt.setLong(1, key.id);
+					pstmt.setString(2, key.oid);
+					pstmt.setString(3, key.index);
+					pstmt.setString(4, sample.getValue());
+					pstmt.setBoolean(5, v.critical);
+					pstmt.setLong(6, sample.timestamp);
+					
+					pstmt.addBatch();
+					
+					if (++count % BATCH_SIZE == 0) {
+						pstmt.executeBatch();
+					}
+				}
+				
+				if (count % BATCH_SIZE > 0) {
+					pstmt.executeBatch();
+				}
+				
+				c.commit();
+			} catch (SQLException sqle) {
+				c.rollback();
+				
+				throw sqle;
+			}
+		} catch (SQLException sqle) {
+			sqle.printStackTrace();
+			
+			// 그 사이 새로 들어온 값이 있으면 그 값을 우선한다
+			for (int i=0, _i=keys.size(); i<_i; i++) {
+				if (this.pending.putIfAbsent(keys.get(i), values.get(i)) == null) {
+					this.queue.offer(keys.get(i));
+				}
+			}
+		}
+	}
+	
+	private static class Flusher extends TimerTask {
+
+		private final ResourceWriter writer;
+		
+		public Flusher(ResourceWriter writer) {
+			this.writer = writer;
+		}
+		
+		@Override
+		public void run() {
+			this.writer.flush();
+		}
+		
+	}
+}
@@ -3,8 +3,8 @@ package com.itahm.nms.node;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.itahm.util.Listenable;
 import com.itahm.util.Listener;
@@ -12,12 +12,15 @@ import com.itahm.util.Listener;
 abstract public class Node implements Runnable, Closeable, Listenable {
 
 	public final long id;
-	protected Boolean isClosed = false;
+	public final String name;
+	protected volatile boolean isClosed = false;
 	protected int timeout = 5000;
 	protected int retry = 1;
-	protected final Thread thread;
-	private final BlockingQueue<Long> queue = new LinkedBlockingQueue<>();
+	private final Object running = new Object();
+	private final Object lock = new Object();
 	private final ArrayList<Listener> listenerList = new ArrayList<>();
+	private Scheduler scheduler;
+	private Future<?> future;
 	
 	public Node(long id) {
 		this(id, String.format("Node [%d]", id));
@@ -25,52 +28,33 @@ abstract public class Node implements Runnable, Closeable, Listenable {
 	
 	public Node(long id, String name) {
 		this.id = id;
-		
-		thread = new Thread(this);
-		
-		thread.setName(name);
-		
-		thread.setDaemon(true);
-		thread.start();
+		this.name = name;
 	}
 
 	@Override
 	public void run() {
-		long delay, sent;
+		long sent;
 		
-		loop: while (!this.thread.isInterrupted()) {
-			try {
-				delay = this.queue.take();
-				
-				if (delay > 0) {
-					Thread.sleep(delay);
-				}
-				else if (delay < 0) {
-					break loop;
+		synchronized (this.running) {
+			for (int i=-1; i<this.retry; i++) {
+				if (this.isClosed) {
+					return;
 				}
 				
-				for (int i=-1; i<this.retry; i++) {
-					if (this.isClosed) {
-						break loop;
-					}
+				try {
+					sent = System.currentTimeMillis();
 					
-					try {
-						sent = System.currentTimeMillis();
+					if (isReachable()) {
+						fireEvent(Event.PING, System.currentTimeMillis() - sent);
 						
-						if (isReachable()) {
-							fireEvent(Event.PING, System.currentTimeMillis() - sent);
-							
-							continue loop;
-						}
-					} catch (IOException ie) {
-						ie.printStackTrace();
+						return;
 					}
+				} catch (IOException ie) {
+					ie.printStackTrace();
 				}
-				
-				fireEvent(Event.PING, Long.valueOf(-1));
-			} catch (InterruptedException ie) {
-				break;
 			}
+			
+			fireEvent(Event.PING, Long.valueOf(-1));
 		}
 	}
 	
@@ -86,10 +70,8 @@ abstract public class Node implements Runnable, Closeable, Listenable {
 
 	@Override
 	public void fireEvent(Object ...args) {
-		synchronized (this.isClosed) {
-			if (this.isClosed) {
-				return;
-			}
+		if (this.isClosed) {
+			return;
 		}
 		
 		for (Listener listener: this.listenerList) {
@@ -105,11 +87,20 @@ abstract public class Node implements Runnable, Closeable, Listenable {
 		this.retry = i;
 	}
 	
+	public void setScheduler(Scheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+	
 	public void ping(long delay) {
-		try {
-			this.queue.put(delay);
-		} catch (InterruptedException ie) {
-			this.thread.interrupt();
+		synchronized (this.lock) {
+			if (this.isClosed) {
+				return;
+			}
+			
+			try {
+				this.future = this.scheduler.schedule(this, delay);
+			} catch (RejectedExecutionException ree) {
+			}
 		}
 	}
 	
@@ -119,26 +110,30 @@ abstract public class Node implements Runnable, Closeable, Listenable {
 	}
 	
 	public void close(boolean wait) {
-		synchronized (this.isClosed) {
+		synchronized (this.lock) {
 			if (this.isClosed) {
 				return;
 			}
 			
 			this.isClosed = true;
+			
+			if (this.future != null) {
+				this.future.cancel(false);
+			}
 		}
 		
-		try {
-			this.queue.put(-1L);
-			
-			if (wait) {
-				this.thread.join();
+		if (wait) {
+			synchronized (this.running) {
 			}
-		} catch (InterruptedException ie) {
-			this.thread.interrupt();
 		}
 		
 		fireEvent(Event.CLOSE);
 	}
 	
+	@Override
+	public String toString() {
+		return this.name;
+	}
+	
 	abstract public boolean isReachable() throws IOException;
 }
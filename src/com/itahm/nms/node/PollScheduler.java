@@ -0,0 +1,69 @@
+package com.itahm.nms.node;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 하나의 timer thread가 지연된 요청을 관리하고 고정된 크기의 worker pool이 실제 polling을 수행한다.
+ * node 수가 늘어나도 thread 수는 변하지 않는다.
+ */
+public class PollScheduler implements Scheduler {
+
+	private final ScheduledExecutorService timer;
+	private final ExecutorService workers;
+	
+	public PollScheduler(int size) {
+		timer = new ScheduledThreadPoolExecutor(1, new Factory("ITAhM Poll Timer"));
+		workers = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new Factory("ITAhM Poller"));
+		
+		((ScheduledThreadPoolExecutor)timer).setRemoveOnCancelPolicy(true);
+		((ThreadPoolExecutor)workers).allowCoreThreadTimeOut(true);
+	}
+	
+	@Override
+	public Future<?> schedule(Runnable task, long delay) {
+		if (delay > 0) {
+			return this.timer.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					workers.execute(task);
+				}
+				
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		
+		return this.workers.submit(task);
+	}
+	
+	@Override
+	public void close() {
+		this.timer.shutdownNow();
+		this.workers.shutdownNow();
+	}
+	
+	private static class Factory implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+		
+		private Factory(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, String.format("%s %d", this.name, this.count.incrementAndGet()));
+			
+			t.setDaemon(true);
+			
+			return t;
+		}
+	}
+}
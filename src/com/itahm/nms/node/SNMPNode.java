@@ -13,7 +13,9 @@ import org.snmp4j.PDU;
 import org.snmp4j.Snmp;
 import org.snmp4j.Target;
 import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
 import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Address;
 import org.snmp4j.smi.Null;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.UdpAddress;
@@ -24,15 +26,17 @@ import com.itahm.nms.node.PDUManager;
 /*import com.itahm.util.Listenable;
 import com.itahm.util.Listener;*/
 
-abstract public class SNMPNode extends ICMPNode/* implements Listenable*/ {
+abstract public class SNMPNode extends ICMPNode implements ResponseListener/*, Listenable*/ {
 
 	private final static long TIMEOUT = 5000L;
 	private final static int RETRY = 2;
+	public final static int MAX_REPETITIONS = 100;
 	private final Snmp snmp;
 	protected final Target<UdpAddress> target;
 	//private final ArrayList<Listener> listenerList = new ArrayList<>();
 	private final Set<OID> reqList = new HashSet<>();
 	private final Map<OID, OID> reqMap = new HashMap<>();
+	private int maxRepetitions = 0;
 	
 	public SNMPNode(Snmp snmp, long id, String ip, Target<UdpAddress> target) throws IOException {
 		super(id, ip, String.format("SNMPNode %s", ip));
@@ -61,11 +65,9 @@ abstract public class SNMPNode extends ICMPNode/* implements Listenable*/ {
 				long rtt = (long)event[1];
 				
 				if (rtt > -1) {
-					PDU pdu = PDUManager.requestPDU(super.id, createPDU());
+					PDU pdu = PDUManager.requestPDU(super.id, createRequestPDU());
 					OID oid;
 					
-					pdu.setType(PDU.GETNEXT);
-					
 					this.reqList.clear();
 					this.reqMap.clear();
 
@@ -82,35 +84,88 @@ abstract public class SNMPNode extends ICMPNode/* implements Listenable*/ {
 					}
 					
 					try {
-						int code = repeat(this.snmp.send(pdu, this.target));
-						/*
-						for (Listener listener: super.listenerList) {
-							listener.onEvent(this, Event.SNMP, code);
-						}*/
-						super.fireEvent(Event.SNMP, code);
+						// walk가 끝나면 onResponse에서 PING 이벤트를 전달한다.
+						this.snmp.send(pdu, this.target, event, this);
+						
+						return;
 					} catch (Exception e) {
-						/*for (Listener listener: super.listenerList) {
-							listener.onEvent(this, Event.SNMP, e);
-						}*/
 						super.fireEvent(Event.SNMP, e);
-					};
+					}
 				}
-				/*
-				for (Listener listener: super.listenerList) {
-					listener.onEvent(this, event);
-				}*/
+				
 				super.fireEvent(event);
 			}
 		}
 	}
 	
+	@Override
+	public <A extends Address> void onResponse(ResponseEvent<A> event) {
+		this.snmp.cancel(event.getRequest(), this);
+		
+		if (super.isClosed) {
+			return;
+		}
+		
+		Object [] ping = (Object [])event.getUserObject();
+		PDU response = event.getResponse();
+		int code;
+		
+		if (response == null || event.getSource() instanceof Snmp.ReportHandler) {
+			code = SnmpConstants.SNMP_ERROR_TIMEOUT;
+		}
+		else {
+			code = response.getErrorStatus();
+			
+			if (code == SnmpConstants.SNMP_ERROR_TOO_BIG && event.getRequest().getType() == PDU.GETBULK) {
+				// GETBULK을 처리하지 못하는 agent는 GETNEXT로 다시 요청한다.
+				PDU pdu = createPDU();
+				
+				this.maxRepetitions = 0;
+				
+				pdu.setVariableBindings(event.getRequest().getVariableBindings());
+				
+				try {
+					this.snmp.send(pdu, this.target, ping, this);
+					
+					return;
+				} catch (Exception e) {
+					super.fireEvent(Event.SNMP, e);
+					super.fireEvent(ping);
+					
+					return;
+				}
+			}
+			else if (code == SnmpConstants.SNMP_ERROR_SUCCESS) {
+				try {
+					PDU nextPDU = getNextPDU(event.getRequest(), response);
+					
+					if (nextPDU != null) {
+						this.snmp.send(nextPDU, this.target, ping, this);
+						
+						return;
+					}
+				} catch (Exception e) {
+					super.fireEvent(Event.SNMP, e);
+					super.fireEvent(ping);
+					
+					return;
+				}
+			}
+		}
+		
+		super.fireEvent(Event.SNMP, code);
+		super.fireEvent(ping);
+	}
+	
 	private final PDU getNextPDU(PDU request, PDU response) throws IOException {
 		PDU pdu = null;
 		long requestID = response.getRequestID().toLong();
 		List<? extends VariableBinding> requestVBs = request.getVariableBindings();
 		List<? extends VariableBinding> responseVBs = response.getVariableBindings();
 		List<VariableBinding> nextRequests = new Vector<VariableBinding>();
-		VariableBinding requestVB;
+		int columns = requestVBs.size();
+		OID [] lastOIDs = new OID [columns];
+		boolean [] finished = new boolean [columns];
 		VariableBinding responseVB;
 		Variable value;
 		OID
@@ -118,35 +173,58 @@ abstract public class SNMPNode extends ICMPNode/* implements Listenable*/ {
 			requestOID,
 			responseOID;
 		
-		for (int i=0, length = responseVBs.size(); i<length; i++) {
-			requestVB = requestVBs.get(i);
+		if (responseVBs.size() == 0) {
+			return null;
+		}
+		
+		// GETBULK 응답은 요청한 column 순서로 repetition 만큼 반복된다.
+		for (int i=0, length = responseVBs.size(), column; i<length; i++) {
+			column = i % columns;
+			
+			if (finished[column]) {
+				continue;
+			}
+			
 			responseVB = responseVBs.get(i);
 			
-			requestOID = requestVB.getOid();
 			responseOID = responseVB.getOid();
 			
 			value = responseVB.getVariable();
 			
-			if (!value.equals(Null.endOfMibView)) {
-				initialOID = this.reqMap.get(requestOID);
-				
-				if (responseOID.startsWith(initialOID)) {
-					nextRequests.add(new VariableBinding(responseOID));
-					
-					this.reqMap.put(responseOID, initialOID);
-					/*
-					for (Listener listener: this.listenerList) {
-						listener.onEvent(this, Event.RESOURCE, initialOID, responseOID.getSuffix(initialOID), responseVB.getVariable(), requestID);
-					}*/
-					super.fireEvent(Event.RESOURCE, initialOID, responseOID.getSuffix(initialOID), responseVB.getVariable(), requestID);
-				}
+			initialOID = this.reqMap.get(requestVBs.get(column).getOid());
+			
+			if (!value.equals(Null.endOfMibView) && responseOID.startsWith(initialOID)) {
+				lastOIDs[column] = responseOID;
+				/*
+				for (Listener listener: this.listenerList) {
+					listener.onEvent(this, Event.RESOURCE, initialOID, responseOID.getSuffix(initialOID), responseVB.getVariable(), requestID);
+				}*/
+				super.fireEvent(Event.RESOURCE, initialOID, responseOID.getSuffix(initialOID), value, requestID);
+			}
+			else {
+				finished[column] = true;
 			}
+		}
+		
+		for (int column=0; column<columns; column++) {
+			requestOID = requestVBs.get(column).getOid();
 			
-			this.reqMap.remove(requestOID);
+			if (finished[column]) {
+				this.reqMap.remove(requestOID);
+			}
+			else if (lastOIDs[column] != null) {
+				nextRequests.add(new VariableBinding(lastOIDs[column]));
+				
+				this.reqMap.put(lastOIDs[column], this.reqMap.remove(requestOID));
+			}
+			else {
+				// 응답 크기 제한으로 잘린 column은 같은 OID로 다시 요청한다.
+				nextRequests.add(new VariableBinding(requestOID));
+			}
 		}
 		
 		if (nextRequests.size() > 0) {
-			pdu = createPDU();
+			pdu = createRequestPDU();
 			
 			pdu.setVariableBindings(nextRequests);
 		}
@@ -154,32 +232,23 @@ abstract public class SNMPNode extends ICMPNode/* implements Listenable*/ {
 		return pdu;
 	}
 	
-	// recursive method
-	private int repeat(ResponseEvent<UdpAddress> event) throws IOException {
-		if (event == null) {
-			return SnmpConstants.SNMP_ERROR_TIMEOUT;
-		}
+	private PDU createRequestPDU() {
+		PDU pdu = createPDU();
 		
-		PDU response = event.getResponse();
-		
-		if (response == null || event.getSource() instanceof Snmp.ReportHandler) {			
-			return SnmpConstants.SNMP_ERROR_TIMEOUT;
+		if (this.maxRepetitions > 0 && this.target.getVersion() != SnmpConstants.version1) {
+			pdu.setType(PDU.GETBULK);
+			pdu.setNonRepeaters(0);
+			pdu.setMaxRepetitions(this.maxRepetitions);
 		}
 		
-		PDU request = event.getRequest();
-		int status = response.getErrorStatus();
-		
-		if (status != SnmpConstants.SNMP_ERROR_SUCCESS) {
-			return status;
-		}
-		
-		PDU nextPDU = getNextPDU(request, response);
-		
-		if (nextPDU == null) {
-			return SnmpConstants.SNMP_ERROR_SUCCESS;
-		}
-		
-		return repeat(this.snmp.send(nextPDU, this.target));
+		return pdu;
+	}
+	
+	/**
+	 * 0 부터 MAX_REPETITIONS 사이로 제한한다.
+	 */
+	public void setMaxRepetitions(int i) {
+		this.maxRepetitions = Math.max(0, Math.min(i, MAX_REPETITIONS));
 	}
 	
 	abstract protected PDU createPDU();
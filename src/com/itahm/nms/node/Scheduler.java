@@ -0,0 +1,9 @@
+package com.itahm.nms.node;
+
+import java.io.Closeable;
+import java.util.concurrent.Future;
+
+public interface Scheduler extends Closeable {
+	public Future<?> schedule(Runnable task, long delay);
+	public void close();
+}
@@ -1,73 +1,77 @@
 package com.itahm.nms.parser;
 
 import java.util.Map;
+import java.util.Set;
 
 import com.itahm.nms.Bean.Max;
+import com.itahm.nms.Bean.Value;
 
 import java.util.HashMap;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
-abstract public class AbstractParser implements Parseable {
+/**
+ * parsing 상태는 node 별로 나누어 두므로 서로 다른 node 는 동시에 parse 할 수 있다.
+ * submit 은 그 node 의 결과를 TopList 에 게시하고, getTop 은 게시된 결과만 읽는다.
+ */
+abstract public class AbstractParser<S extends AbstractParser.State> implements Parseable {
+	
+	private final Map<Long, S> stateMap = new ConcurrentHashMap<>();
+	private final TopList top = new TopList(false);
+	private final TopList topRate = new TopList(true);
+	
+	/**
+	 * 한 node 는 한 번에 한 thread 만 parse, submit 하므로 상태 안에서는 lock 을 쓰지 않는다.
+	 */
+	public static class State {
+		protected Max max;
+		protected Max maxRate;
+	}
+	
+	/**
+	 * 이전 counter 값으로 변화율을 구하는 parser 의 상태.
+	 */
+	public static class CounterState extends State {
+		protected final Map<Integer, Value> oldMap = new HashMap<>();
+	}
+	
+	abstract protected S createState();
+	
+	protected S getState(long id) {
+		return this.stateMap.computeIfAbsent(id, k -> createState());
+	}
 	
-	protected Map<Long, Max> publicMax = new HashMap<>();
-	protected Map<Long, Max> max = new HashMap<>();
-
 	@Override
-	public List<Max> getTop(List<Long> list, boolean byRate) {
-		final Map<Long, Max> idMap = this.publicMax;
-		
-		List<Max> result = new ArrayList<>();
-		
-		Collections.sort(list, new Comparator<Long>() {
-
-			@Override
-			public int compare(Long id1, Long id2) {
-				Max max1 = idMap.get(id1);
-				Max max2 = idMap.get(id2);
-				
-				if (max1 == null) {
-					if (max2 == null) {
-						return -1;
-					}
-					else {
-						return 1;
-					}
-				} else if (max2 == null) {
-					return -1;
-				}
-				
-				long l = Long.valueOf(max2.value) - Long.valueOf(max1.value);
-				
-				return l > 0? 1: l < 0? -1: 0;
-			}
-		});
-		
-		Max max;
-		
-		for (int i=0, _i=list.size(); i<_i; i++) {
-			max = idMap.get(list.get(i));
-			
-			if (max != null) {
-				result.add(max);
-			}
-		}
-		
-		return result;
+	public List<Max> getTop(Set<Long> ids, boolean byRate, int count) {
+		return (byRate? this.topRate: this.top).getTop(ids, count);
 	}
 	
+	/**
+	 * rate 를 따로 구하지 않는 parser 는 value 의 최대값이 rate 순위에도 쓰인다.
+	 */
 	@Override
 	public void submit(long id) {
-		this.publicMax.put(id, this.max.get(id));
+		S state = this.stateMap.get(id);
+		Max max = null, maxRate = null;
 		
-		this.max.remove(id);
+		if (state != null) {
+			max = state.max;
+			maxRate = state.maxRate == null? max: state.maxRate;
+			
+			state.max = null;
+			state.maxRate = null;
+		}
+		
+		this.top.put(id, max);
+		this.topRate.put(id, maxRate);
 	}
 	
 	@Override
 	public void reset(long id) {
-		this.publicMax.remove(id);
+		this.stateMap.remove(id);
+		
+		this.top.remove(id);
+		this.topRate.remove(id);
 	}
 
 }
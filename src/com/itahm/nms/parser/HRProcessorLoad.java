@@ -1,6 +1,7 @@
 package com.itahm.nms.parser;
 
 import java.util.Map;
+import java.util.Set;
 
 import com.itahm.nms.Bean.CriticalEvent;
 import com.itahm.nms.Bean.Max;
@@ -8,8 +9,22 @@ import com.itahm.nms.Bean.Value;
 
 import java.util.HashMap;
 
-public class HRProcessorLoad extends AbstractParser {
-	private final Map<Long, Map<Integer, Integer>> load = new HashMap<>();
+public class HRProcessorLoad extends AbstractParser<HRProcessorLoad.LoadState> {
+	private final static Set<String> OIDS = Set.of("1.3.6.1.2.1.25.3.3.1.2");
+	
+	@Override
+	public Set<String> getOIDs() {
+		return OIDS;
+	}
+	
+	public static class LoadState extends AbstractParser.State {
+		private final Map<Integer, Integer> load = new HashMap<>();
+	}
+	
+	@Override
+	protected LoadState createState() {
+		return new LoadState();
+	}
 	
 	@Override
 	public CriticalEvent parse(long id, String idx, Map<String, Value> oidMap) {
@@ -24,20 +39,14 @@ public class HRProcessorLoad extends AbstractParser {
 				return null;
 			}
 			
-			int load = Integer.valueOf(v.value);
-			
-			Map<Integer, Integer> indexMap = this.load.get(id);
-				
-			if (indexMap == null) {
-				this.load.put(id, indexMap = new HashMap<>());
-			}
+			int load = (int)v.longValue();
 			
-			indexMap.put(index, load);
+			LoadState state = getState(id);
 			
-			Max max = super.max.get(id);
+			state.load.put(index, load);
 			
-			if (max == null || Integer.valueOf(max.value) < load) {
-				super.max.put(id, new Max(id, index, Integer.toString(load), load));
+			if (state.max == null || state.max.value < load) {
+				state.max = new Max(id, index, load, load);
 			}
 			
 			if (v.limit > 0) {
@@ -62,9 +71,9 @@ public class HRProcessorLoad extends AbstractParser {
 		int sum = 0;
 		int count = 0;
 		
-		Map<Integer, Integer> indexMap = this.load.get(id);
+		Map<Integer, Integer> indexMap = getState(id).load;
 		
-		if (indexMap == null) {
+		if (indexMap.isEmpty()) {
 			return null;
 		}
 		
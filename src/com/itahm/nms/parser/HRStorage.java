@@ -1,39 +1,41 @@
 package com.itahm.nms.parser;
 
 import java.util.Map;
+import java.util.Set;
 
 import com.itahm.nms.Bean.CriticalEvent;
 import com.itahm.nms.Bean.Max;
 import com.itahm.nms.Bean.Value;
 
-import java.util.HashMap;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
-
-abstract public class HRStorage implements Parseable {
-	private Map<Long, Max> publicMax = new HashMap<>();
-	private Map<Long, Max> max = new HashMap<>();
-	private Map<Long, Max> publicMaxRate = new HashMap<>();
-	private Map<Long, Max> maxRate = new HashMap<>();
+abstract public class HRStorage extends AbstractParser<AbstractParser.State> {
+	private final static Set<String> OIDS = Set.of("1.3.6.1.2.1.25.2.3.1.6");
+	
+	@Override
+	public Set<String> getOIDs() {
+		return OIDS;
+	}
+	
+	@Override
+	protected State createState() {
+		return new State();
+	}
 	
 	@Override
 	public CriticalEvent parse(long id, String idx, Map<String, Value> oidMap) {
 		Value v = oidMap.get("1.3.6.1.2.1.25.2.3.1.2"); // type
 		
 		if (v != null) {
-			if (v.value.equals(getStorageTypeOID())) { // fixed disk
+			if (getStorageTypeOID().equals(v.getValue())) { // fixed disk
 		
 				v = oidMap.get("1.3.6.1.2.1.25.2.3.1.5"); // syze
 				
 				if (v != null) {
-					long size = Long.valueOf(v.value);
+					long size = v.longValue();
 					
 					v = oidMap.get("1.3.6.1.2.1.25.2.3.1.4"); // units
 					
 					if (v != null) {
-						long units = Long.valueOf(v.value);
+						long units = v.longValue();
 						
 						v = oidMap.get("1.3.6.1.2.1.25.2.3.1.6"); // used
 		
@@ -46,17 +48,18 @@ abstract public class HRStorage implements Parseable {
 								return null;
 							}
 							
-							long used = Long.valueOf(v.value);
-							Max max = this.max.get(id);
+							long used = v.longValue();
+							State state = getState(id);
+							Max max = state.max;
 							
-							if (max == null || Long.valueOf(max.value) < used * units) {
-								this.max.put(id, new Max(id, index, Long.toString(used * units), used *100 / size));
+							if (max == null || max.value < used * units) {
+								state.max = new Max(id, index, used * units, used *100 / size);
 							}
 							
-							max = this.maxRate.get(id);
+							max = state.maxRate;
 							
 							if (max == null || max.rate < used *100 / size) {
-								this.maxRate.put(id, new Max(id, index, Long.toString(used * units), used *100 / size));
+								state.maxRate = new Max(id, index, used * units, used *100 / size);
 							}
 							
 							if (v.limit > 0) {
@@ -83,102 +86,6 @@ abstract public class HRStorage implements Parseable {
 		return null;
 	}
 
-	@Override
-	public List<Max> getTop(List<Long> list, boolean byRate) {
-		List<Max> result = new ArrayList<>();
-		
-		if (byRate) {
-			final Map<Long, Max> idMap = this.publicMaxRate;
-			
-			Collections.sort(list, new Comparator<Long>() {
-				
-				@Override
-				public int compare(Long id1, Long id2) {
-					Max max1 = idMap.get(id1);
-					Max max2 = idMap.get(id2);
-					
-					if (max1 == null) {
-						if (max2 == null) {
-							return -1;
-						}
-						else {
-							return 1;
-						}
-					} else if (max2 == null) {
-						return -1;
-					}
-					
-					long l = max2.rate - max1.rate;
-					
-					return l > 0? 1: l < 0? -1: 0;
-				}
-			});
-			
-			Max max;
-			
-			for (int i=0, _i=list.size(); i<_i; i++) {
-				max = idMap.get(list.get(i));
-				
-				if (max != null) {
-					result.add(max);
-				}
-			}
-		} else {
-			final Map<Long, Max> idMap = this.publicMax;
-			
-			Collections.sort(list, new Comparator<Long>() {
-	
-				@Override
-				public int compare(Long id1, Long id2) {
-					Max max1 = idMap.get(id1);
-					Max max2 = idMap.get(id2);
-					
-					if (max1 == null) {
-						if (max2 == null) {
-							return -1;
-						}
-						else {
-							return 1;
-						}
-					} else if (max2 == null) {
-						return -1;
-					}
-					
-					long l = Long.valueOf(max2.value) - Long.valueOf(max1.value);
-					
-					return l > 0? 1: l < 0? -1: 0;
-				}
-			});
-			
-			Max max;
-			
-			for (int i=0, _i=list.size(); i<_i; i++) {
-				max = idMap.get(list.get(i));
-				
-				if (max != null) {
-					result.add(max);
-				}
-			}
-		}
-		
-		return result;
-	}
-	
-	@Override
-	public void submit(long id) {
-		this.publicMax.put(id, this.max.get(id));
-		this.publicMaxRate.put(id, this.maxRate.get(id));
-		
-		this.max.remove(id);
-		this.maxRate.remove(id);
-	}
-	
-	@Override
-	public void reset(long id) {
-		this.publicMax.remove(id);
-		this.publicMaxRate.remove(id);
-	}
-
 	abstract public String getStorageTypeOID();
 	abstract protected String getEventTitle();
 }
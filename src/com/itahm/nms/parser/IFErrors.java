@@ -1,26 +1,31 @@
 package com.itahm.nms.parser;
 
 import java.util.Map;
+import java.util.Set;
 
 import com.itahm.nms.Bean.CriticalEvent;
 import com.itahm.nms.Bean.Max;
 import com.itahm.nms.Bean.Value;
 
-import java.util.HashMap;
-
-abstract public class IFErrors extends AbstractParser {
-	private final Map<Long, Map<Integer, Value>> oldMap = new HashMap<>();
+abstract public class IFErrors extends AbstractParser<AbstractParser.CounterState> {
+	
+	@Override
+	public Set<String> getOIDs() {
+		return Set.of(getErrorsOID());
+	}
+	
+	@Override
+	protected CounterState createState() {
+		return new CounterState();
+	}
 	
 	@Override
 	public CriticalEvent parse(long id, String idx, Map<String, Value> oidMap) {
 		Value v = oidMap.get(getErrorsOID());
 		
 		if (v != null) {
-			Map<Integer, Value> oldIndexMap = this.oldMap.get(id);
-			
-			if (oldIndexMap == null) {
-				this.oldMap.put(id, oldIndexMap = new HashMap<Integer, Value>());
-			}
+			CounterState state = getState(id);
+			Map<Integer, Value> oldIndexMap = state.oldMap;
 			
 			int index;
 			
@@ -30,23 +35,28 @@ abstract public class IFErrors extends AbstractParser {
 				return null;
 			}
 			
-			Long cps = parse(id, oldIndexMap.get(index), Long.valueOf(v.value), v.timestamp);
+			Value old = oldIndexMap.get(index);
+			Long cps = parse(id, old, v.longValue(), v.getTimestamp());
 			
-			oldIndexMap.put(index, new Value(v.timestamp, v.value));
+			if (old == null) {
+				oldIndexMap.put(index, new Value(v.getTimestamp(), v.longValue()));
+			}
+			else {
+				old.set(v.getTimestamp(), v.longValue());
+			}
 			
 			if (cps != null) {
-				Max max = this.max.get(id);
+				Max max = state.max;
 				Value cpsValue = oidMap.get(getCPSOID());
 				
-				if (max == null || Long.valueOf(max.value) < cps) {
-					this.max.put(id, new Max(id, index, Long.toString(cps)));
+				if (max == null || max.value < cps) {
+					state.max = new Max(id, index, cps);
 				}
 				
 				if (cpsValue == null) {
-					oidMap.put(getCPSOID(), new Value(v.timestamp, Long.toString(cps)));
+					oidMap.put(getCPSOID(), new Value(v.getTimestamp(), cps));
 				} else {					
-					cpsValue.timestamp = v.timestamp;
-					cpsValue.value = Long.toString(cps);
+					cpsValue.set(v.getTimestamp(), cps);
 				}
 				
 				if (v.limit > 0) {
@@ -70,10 +80,10 @@ abstract public class IFErrors extends AbstractParser {
 	
 	private Long parse(long id, Value old, long errors, long timestamp) {
 		if (old != null) {
-			long diff = timestamp - old.timestamp;
+			long diff = timestamp - old.getTimestamp();
 			
 			if (diff > 0) {
-				return (errors - Long.valueOf(old.value)) / diff *1000;
+				return (errors - old.longValue()) / diff *1000;
 			}
 		}
 		
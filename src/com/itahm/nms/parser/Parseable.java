@@ -2,13 +2,26 @@ package com.itahm.nms.parser;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.itahm.nms.Bean.CriticalEvent;
 import com.itahm.nms.Bean.Max;
 import com.itahm.nms.Bean.Value;
 
 public interface Parseable {
-	public List<Max> getTop(List<Long> list, boolean byRate);
+	/**
+	 * 수집한 자원 중 이 OID 가 있는 index 만 parse 에 넘어온다.
+	 */
+	public Set<String> getOIDs();
+	
+	/**
+	 * TOP 요청에서 쓰는 이름.
+	 */
+	default public String getName() {
+		return getClass().getSimpleName().toUpperCase();
+	}
+	
+	public List<Max> getTop(Set<Long> ids, boolean byRate, int count);
 	public CriticalEvent parse(long id, String index, Map<String, Value> oidMap);
 	public void submit(long id);
 	public void reset(long id);
@@ -0,0 +1,133 @@
+package com.itahm.nms.parser;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import com.itahm.nms.Bean.CriticalEvent;
+import com.itahm.nms.Bean.Value;
+
+/**
+ * 이름으로 parser 를 찾고, 수집한 자원은 그 OID 를 구독한 parser 에게만 보여준다.
+ * 기본 parser 외에 META-INF/services/com.itahm.nms.parser.Parseable 에 등록한 parser 도 읽어 들인다.
+ */
+public class ParserRegistry {
+
+	private static class Table {
+		private final Map<String, Parseable> parserMap;
+		private final Parseable [] subscribers;
+		private final Map<String, int []> oidMap;
+		
+		private Table(Map<String, Parseable> parserMap, Parseable [] subscribers, Map<String, int []> oidMap) {
+			this.parserMap = parserMap;
+			this.subscribers = subscribers;
+			this.oidMap = oidMap;
+		}
+	}
+	
+	private volatile Table table = new Table(Collections.emptyMap(), new Parseable [0], Collections.emptyMap());
+	
+	public ParserRegistry() {
+		register(new HRProcessorLoad());
+		register(new HRStorageMemory());
+		register(new HRStorageUsed());
+		register(new IFInOctets());
+		register(new IFOutOctets());
+		register(new IFInErrors());
+		register(new IFOutErrors());
+		register(new ResponseTime());
+		
+		for (Parseable parser : ServiceLoader.load(Parseable.class)) {
+			register(parser);
+		}
+	}
+	
+	/**
+	 * 같은 이름의 parser 가 있으면 바꾼다. 조회는 lock 없이 하도록 등록할 때마다 표를 새로 만든다.
+	 */
+	public synchronized void register(Parseable parser) {
+		Map<String, Parseable> parserMap = new LinkedHashMap<>(this.table.parserMap);
+		List<Parseable> subscribers = new ArrayList<>();
+		Map<String, List<Integer>> oidList = new HashMap<>();
+		Map<String, int []> oidMap = new HashMap<>();
+		
+		parserMap.put(parser.getName(), parser);
+		
+		for (Parseable p : parserMap.values()) {
+			if (p.getOIDs().isEmpty()) {
+				continue;
+			}
+			
+			for (String oid : p.getOIDs()) {
+				oidList.computeIfAbsent(oid, k -> new ArrayList<>()).add(subscribers.size());
+			}
+			
+			subscribers.add(p);
+		}
+		
+		for (Map.Entry<String, List<Integer>> entry : oidList.entrySet()) {
+			oidMap.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+		}
+		
+		this.table = new Table(Collections.unmodifiableMap(parserMap), subscribers.toArray(new Parseable [0]), oidMap);
+	}
+	
+	public Parseable get(String name) {
+		return this.table.parserMap.get(name);
+	}
+	
+	/**
+	 * index 마다 구독한 OID 가 하나라도 있는 parser 를 등록한 순서대로 한 번씩 부른다.
+	 */
+	public void parse(long id, Map<String, Map<String, Value>> indexMap, List<CriticalEvent> events) {
+		Table table = this.table;
+		BitSet interested = new BitSet(table.subscribers.length);
+		Map<String, Value> oidMap;
+		CriticalEvent event;
+		int [] subscribers;
+		
+		for (String index : indexMap.keySet()) {
+			oidMap = indexMap.get(index);
+			
+			interested.clear();
+			
+			for (String oid : oidMap.keySet()) {
+				subscribers = table.oidMap.get(oid);
+				
+				if (subscribers != null) {
+					for (int i : subscribers) {
+						interested.set(i);
+					}
+				}
+			}
+			
+			for (int i = interested.nextSetBit(0); i >= 0; i = interested.nextSetBit(i +1)) {
+				event = table.subscribers[i].parse(id, index, oidMap);
+				
+				if (event != null) {
+					events.add(event);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * OID 를 구독하는 parser 모두에게 node 의 결과를 게시하게 한다.
+	 */
+	public void submit(long id) {
+		for (Parseable parser : this.table.subscribers) {
+			parser.submit(id);
+		}
+	}
+	
+	public void reset(long id) {
+		for (Parseable parser : this.table.subscribers) {
+			parser.reset(id);
+		}
+	}
+}
@@ -1,15 +1,26 @@
 package com.itahm.nms.parser;
 
 import java.util.Map;
+import java.util.Set;
 
 import com.itahm.nms.Bean.CriticalEvent;
 import com.itahm.nms.Bean.Max;
 import com.itahm.nms.Bean.Value;
 
-import java.util.HashMap;
-
-public class ResponseTime extends AbstractParser {
-	private final Map<Long, Map<Integer, Long>> rtt = new HashMap<>();
+public class ResponseTime extends AbstractParser<AbstractParser.State> {
+	
+	/**
+	 * 응답 시간은 ping 결과로 직접 parse 하므로 SNMP 자원은 구독하지 않는다.
+	 */
+	@Override
+	public Set<String> getOIDs() {
+		return Set.of();
+	}
+	
+	@Override
+	protected State createState() {
+		return new State();
+	}
 	
 	@Override
 	public CriticalEvent parse(long id, String idx, Map<String, Value> oidMap) {
@@ -24,19 +35,11 @@ public class ResponseTime extends AbstractParser {
 		Value v = oidMap.get("1.3.6.1.4.1.49447.1");
 		
 		if (v != null) {
-			Long rtt = Long.valueOf(v.value);
-			Map<Integer, Long> indexMap = this.rtt.get(id);
-				
-			if (indexMap == null) {
-				this.rtt.put(id, indexMap = new HashMap<>());
-			}
-			
-			indexMap.put(index, rtt);
-			
-			Max max = super.max.get(id);
+			long rtt = v.longValue();
+			State state = getState(id);
 			
-			if (max == null || Long.valueOf(max.value) < rtt) {
-				super.max.put(id, new Max(id, index, Long.toString(rtt)));
+			if (state.max == null || state.max.value < rtt) {
+				state.max = new Max(id, index, rtt);
 			}
 			
 			if (v.limit > 0) {
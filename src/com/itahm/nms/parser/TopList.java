@@ -0,0 +1,121 @@
+package com.itahm.nms.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.itahm.nms.Bean.Max;
+
+/**
+ * node 별 최대값을 정렬된 상태로 유지한다.
+ * submit 할 때마다 갱신되므로 getTop 은 앞에서부터 요청한 개수만큼만 읽는다.
+ * 요청한 node 가 전체에 비해 적으면 앞에서부터 읽어도 끝까지 가야 하므로, 그때는 node 마다 찾아 정렬한다.
+ */
+public class TopList {
+
+	private final static Comparator<Max> BY_VALUE = (max1, max2) -> {
+		int c = Long.compare(max2.value, max1.value);
+		
+		if (c == 0) {
+			c = Long.compare(max2.rate, max1.rate);
+		}
+		
+		return c == 0? Long.compare(max1.id, max2.id): c;
+	};
+	
+	private final static Comparator<Max> BY_RATE = (max1, max2) -> {
+		int c = Long.compare(max2.rate, max1.rate);
+		
+		if (c == 0) {
+			c = Long.compare(max2.value, max1.value);
+		}
+		
+		return c == 0? Long.compare(max1.id, max2.id): c;
+	};
+	
+	private final Map<Long, Max> maxMap = new ConcurrentHashMap<>();
+	private final Comparator<Max> comparator;
+	private final NavigableSet<Max> sorted;
+	
+	public TopList(boolean byRate) {
+		comparator = byRate? BY_RATE: BY_VALUE;
+		sorted = new ConcurrentSkipListSet<>(comparator);
+	}
+	
+	/**
+	 * max 가 null 이면 id 를 목록에서 뺀다.
+	 */
+	public synchronized void put(long id, Max max) {
+		Max old = max == null? this.maxMap.remove(id): this.maxMap.put(id, max);
+		
+		if (old != null) {
+			this.sorted.remove(old);
+		}
+		
+		if (max != null) {
+			this.sorted.add(max);
+		}
+	}
+	
+	public void remove(long id) {
+		put(id, null);
+	}
+	
+	public List<Max> getTop(Set<Long> ids, int count) {
+		if (count <= 0) {
+			return new ArrayList<>();
+		}
+		
+		// 앞에서부터 읽으면 평균 count * 전체 / ids 개를 지나야 한다.
+		if ((long)ids.size() * ids.size() < (long)count * this.maxMap.size()) {
+			return find(ids, count);
+		}
+		
+		List<Max> result = new ArrayList<>(Math.min(count, ids.size()));
+		
+		for (Max max : this.sorted) {
+			if (result.size() >= count) {
+				break;
+			}
+			
+			if (ids.contains(max.id)) {
+				result.add(max);
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * ids 의 최대값을 하나씩 찾고 count 개만 남긴다.
+	 */
+	private List<Max> find(Set<Long> ids, int count) {
+		PriorityQueue<Max> heap = new PriorityQueue<>(count +1, this.comparator.reversed());
+		Max max;
+		
+		for (Long id : ids) {
+			max = this.maxMap.get(id);
+			
+			if (max != null) {
+				heap.offer(max);
+				
+				if (heap.size() > count) {
+					heap.poll();
+				}
+			}
+		}
+		
+		List<Max> result = new ArrayList<>(heap);
+		
+		Collections.sort(result, this.comparator);
+		
+		return result;
+	}
+}
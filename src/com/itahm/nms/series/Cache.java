@@ -0,0 +1,72 @@
+package com.itahm.nms.series;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 최근에 사용한 파일을 size 개까지 열어 두는 LRU.
+ * 닫는 동안 cache를 잠그고 있지 않도록 밀려난 파일은 evicted()로 꺼내 cache 밖에서 닫는다.
+ */
+class Cache<T extends Closeable> extends LinkedHashMap<Path, T> {
+
+	private static final long serialVersionUID = 1L;
+	
+	private final int size;
+	private final List<T> evicted = new ArrayList<>();
+	
+	public Cache(int size) {
+		super(size, .75f, true);
+		
+		this.size = size;
+	}
+	
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<Path, T> eldest) {
+		if (size() > this.size) {
+			this.evicted.add(eldest.getValue());
+			
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * 마지막으로 꺼낸 뒤 밀려난 파일
+	 */
+	public List<T> evicted() {
+		List<T> list = new ArrayList<>(this.evicted);
+		
+		this.evicted.clear();
+		
+		return list;
+	}
+	
+	/**
+	 * 모든 파일을 비우고 닫아야 할 파일을 돌려준다.
+	 */
+	public List<T> drain() {
+		List<T> list = evicted();
+		
+		list.addAll(values());
+		
+		clear();
+		
+		return list;
+	}
+	
+	public static void close(List<? extends Closeable> list) {
+		for (Closeable c : list) {
+			try {
+				c.close();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.itahm.nms.series;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.itahm.nms.series.SeriesStore.Visitor;
+
+/**
+ * 하나의 series에 대한 연속된 sample 묶음.
+ * timestamp는 delta-of-delta, value는 delta를 zigzag varint로 기록한다.
+ */
+class Chunk {
+
+	private byte [] buffer = new byte [32];
+	private int length = 0;
+	private int count = 0;
+	private long first;
+	private long last;
+	private long delta;
+	private long value;
+	
+	public void append(long timestamp, long value) {
+		switch (this.count) {
+		case 0:
+			this.first = timestamp;
+			
+			writeVarLong(zigzag(value));
+			
+			break;
+		case 1:
+			this.delta = timestamp - this.last;
+			
+			writeVarLong(zigzag(this.delta));
+			writeVarLong(zigzag(value - this.value));
+			
+			break;
+		default:
+			long delta = timestamp - this.last;
+			
+			writeVarLong(zigzag(delta - this.delta));
+			writeVarLong(zigzag(value - this.value));
+			
+			this.delta = delta;
+		}
+		
+		this.last = timestamp;
+		this.value = value;
+		this.count++;
+	}
+	
+	public int count() {
+		return this.count;
+	}
+	
+	public long first() {
+		return this.first;
+	}
+	
+	public long last() {
+		return this.last;
+	}
+	
+	public ByteBuffer data() {
+		return ByteBuffer.wrap(this.buffer, 0, this.length);
+	}
+	
+	public void get(long from, long to, Visitor visitor) {
+		if (this.count > 0 && this.last >= from && this.first <= to) {
+			decode(data(), this.count, this.first, from, to, visitor);
+		}
+	}
+	
+	public static void decode(ByteBuffer data, int count, long first, long from, long to, Visitor visitor) {
+		long timestamp = first;
+		long delta = 0;
+		long value = 0;
+		
+		for (int i=0; i<count; i++) {
+			switch (i) {
+			case 0:
+				value = unzigzag(readVarLong(data));
+				
+				break;
+			case 1:
+				delta = unzigzag(readVarLong(data));
+				timestamp += delta;
+				value += unzigzag(readVarLong(data));
+				
+				break;
+			default:
+				delta += unzigzag(readVarLong(data));
+				timestamp += delta;
+				value += unzigzag(readVarLong(data));
+			}
+			
+			if (timestamp >= from && timestamp <= to) {
+				visitor.visit(timestamp, value);
+			}
+		}
+	}
+	
+	private void writeVarLong(long l) {
+		if (this.buffer.length - this.length < 10) {
+			this.buffer = Arrays.copyOf(this.buffer, this.buffer.length *2);
+		}
+		
+		while ((l & ~0x7FL) != 0) {
+			this.buffer[this.length++] = (byte)((l & 0x7F) | 0x80);
+			
+			l >>>= 7;
+		}
+		
+		this.buffer[this.length++] = (byte)l;
+	}
+	
+	private static long readVarLong(ByteBuffer data) {
+		long l = 0;
+		byte b;
+		
+		for (int shift = 0; ; shift += 7) {
+			b = data.get();
+			
+			l |= (long)(b & 0x7F) << shift;
+			
+			if ((b & 0x80) == 0) {
+				return l;
+			}
+		}
+	}
+	
+	private static long zigzag(long l) {
+		return (l << 1) ^ (l >> 63);
+	}
+	
+	private static long unzigzag(long l) {
+		return (l >>> 1) ^ -(l & 1);
+	}
+}
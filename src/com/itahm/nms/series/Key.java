@@ -0,0 +1,29 @@
+package com.itahm.nms.series;
+
+public final class Key {
+	public final long id;
+	public final String index;
+	public final String oid;
+	
+	public Key(long id, String index, String oid) {
+		this.id = id;
+		this.index = index;
+		this.oid = oid;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (Long.hashCode(this.id) *31 + this.index.hashCode()) *31 + this.oid.hashCode();
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Key)) {
+			return false;
+		}
+		
+		Key key = (Key)o;
+		
+		return this.id == key.id && this.index.equals(key.index) && this.oid.equals(key.oid);
+	}
+}
@@ -0,0 +1,116 @@
+package com.itahm.nms.series;
+
+import java.util.TimeZone;
+
+import com.itahm.nms.series.SeriesStore.Visitor;
+
+/**
+ * sample을 resolution 단위로 묶어 min, max, avg, last를 계산한다.
+ * 결과는 bucket마다 같은 timestamp로 네 값을 차례로 Chunk에 기록한다.
+ * unsigned(Counter64) series는 2^63 이상의 값이 음수로 저장되므로 unsigned로 비교한다.
+ */
+class Rollup implements Visitor {
+
+	private final long resolution;
+	private final boolean unsigned;
+	private final Chunk chunk = new Chunk();
+	private long bucket;
+	private long min;
+	private long max;
+	private long last;
+	private long count = 0;
+	private double avg;
+	
+	public Rollup(long resolution, boolean unsigned) {
+		this.resolution = resolution;
+		this.unsigned = unsigned;
+	}
+	
+	@Override
+	public void visit(long timestamp, long value) {
+		long bucket = floor(timestamp, this.resolution);
+		
+		if (this.count == 0 || bucket != this.bucket) {
+			flush();
+			
+			this.bucket = bucket;
+			this.min = value;
+			this.max = value;
+			this.avg = 0;
+		}
+		
+		if (this.unsigned) {
+			if (Long.compareUnsigned(value, this.min) < 0) {
+				this.min = value;
+			}
+			
+			if (Long.compareUnsigned(value, this.max) > 0) {
+				this.max = value;
+			}
+			
+			this.avg += (toDouble(value) - this.avg) / ++this.count;
+		} else {
+			this.min = Math.min(this.min, value);
+			this.max = Math.max(this.max, value);
+			this.avg += (value - this.avg) / ++this.count;
+		}
+
+		this.last = value;
+	}
+	
+	private void flush() {
+		if (this.count > 0) {
+			this.chunk.append(this.bucket, this.min);
+			this.chunk.append(this.bucket, this.max);
+			this.chunk.append(this.bucket, this.unsigned? toUnsigned(this.avg): Math.round(this.avg));
+			this.chunk.append(this.bucket, this.last);
+			
+			this.count = 0;
+		}
+	}
+	
+	private static double toDouble(long value) {
+		return value < 0? (double)(value >>> 1) *2 + (value & 1): value;
+	}
+	
+	private static long toUnsigned(double value) {
+		return value < 0x1p63? Math.round(value): Math.round(value - 0x1p63) + Long.MIN_VALUE;
+	}
+	
+	/**
+	 * timestamp가 속한 bucket의 시작 (local time 기준)
+	 */
+	static long floor(long timestamp, long resolution) {
+		return timestamp - Math.floorMod(timestamp + TimeZone.getDefault().getOffset(timestamp), resolution);
+	}
+	
+	public Chunk finish() {
+		flush();
+		
+		return this.chunk;
+	}
+	
+	/**
+	 * Rollup chunk의 sample 네 개를 하나의 bucket으로 전달한다.
+	 */
+	static class Reader implements Visitor {
+		private final SeriesStore.Summarizer summarizer;
+		private final long [] value = new long [4];
+		private int count = 0;
+		
+		Reader(SeriesStore.Summarizer summarizer) {
+			this.summarizer = summarizer;
+		}
+		
+		@Override
+		public void visit(long timestamp, long value) {
+			this.value[this.count++] = value;
+			
+			if (this.count == this.value.length) {
+				this.summarizer.visit(timestamp, this.value[0], this.value[1], this.value[2], this.value[3]);
+				
+				this.count = 0;
+			}
+		}
+	}
+}
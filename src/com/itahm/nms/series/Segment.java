@@ -0,0 +1,525 @@
+package com.itahm.nms.series;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.itahm.nms.series.SeriesStore.Visitor;
+
+/**
+ * 하루치 series를 담는 append-only 파일.
+ * 
+ * header: MAGIC(4)
+ * define: 'D' series(4) id(8) oid length(2) oid index length(2) index (Counter64 처럼 unsigned인 series는 'U')
+ * chunk: 'C' series(4) count(4) first(8) last(8) length(4) data
+ * 
+ * series마다 CHUNK_SIZE 개의 sample이 모이면 chunk로 기록한다.
+ * 기록된 chunk는 memory-map으로 읽는다.
+ * 
+ * 아직 chunk가 되지 않은 sample은 sync 할 때마다 log 파일(.wal)에 series(4) timestamp(8) value(8)로 남기고
+ * 다시 열 때 이어 붙이므로, 비정상 종료에도 마지막 sync 이후의 sample만 잃는다.
+ */
+class Segment implements Closeable {
+
+	private final static int MAGIC = 0x49545453;
+	private final static byte DEFINE = 'D';
+	private final static byte UNSIGNED = 'U';
+	private final static byte CHUNK = 'C';
+	private final static int CHUNK_HEADER = 29;
+	private final static int CHUNK_SIZE = 12;
+	private final static int READ_LIMIT = 4;
+	// 하나의 MappedByteBuffer로 읽을 수 있는 크기
+	private final static long MAX_SIZE = Integer.MAX_VALUE;
+	private final static int LOG_RECORD = 20;
+	// log가 이 크기를 넘으면 chunk가 되지 않은 sample만 남기고 다시 쓴다.
+	private final static long LOG_LIMIT = 1024 *1024;
+	
+	public final Path path;
+	private final FileChannel channel;
+	private final boolean writable;
+	private final Map<Key, Integer> seriesMap = new HashMap<>();
+	private final Set<Key> unsignedSet = new HashSet<>();
+	private final List<long []> chunkList = new ArrayList<>();
+	private final List<Chunk> pendingList = new ArrayList<>();
+	// series마다 chunk로 기록된 마지막 timestamp
+	private final List<Long> lastList = new ArrayList<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Semaphore permits = new Semaphore(READ_LIMIT);
+	private final Path logPath;
+	private ByteBuffer log = ByteBuffer.allocate(LOG_RECORD *64);
+	private long logSize = 0;
+	private MappedByteBuffer map;
+	private volatile long size = 0;
+	
+	public Segment(Path path, boolean writable) throws IOException {
+		this.path = path;
+		this.writable = writable;
+		this.logPath = path.resolveSibling(path.getFileName() +".wal");
+		
+		this.channel = writable?
+			FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE):
+			FileChannel.open(path, StandardOpenOption.READ);
+		
+		try {
+			if (this.channel.size() == 0) {
+				if (writable) {
+					write(ByteBuffer.allocate(4).putInt(MAGIC).flip());
+				}
+			}
+			else {
+				load();
+			}
+			
+			recover();
+		} catch (IOException ioe) {
+			this.channel.close();
+			
+			throw ioe;
+		}
+	}
+	
+	private void load() throws IOException {
+		if (this.channel.size() > MAX_SIZE) {
+			throw new IOException(String.format("%s is too large.", this.path));
+		}
+		
+		ByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+		
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException(String.format("%s is not a series segment.", this.path));
+		}
+		
+		this.size = buffer.position();
+		
+		try {
+			while (buffer.hasRemaining()) {
+				byte type = buffer.get();
+				
+				switch (type) {
+				case DEFINE:
+				case UNSIGNED:
+					int series = buffer.getInt();
+					long id = buffer.getLong();
+					String oid = readString(buffer);
+					
+					define(series, new Key(id, readString(buffer), oid), type == UNSIGNED);
+					
+					break;
+				case CHUNK:
+					series = buffer.getInt();
+					
+					buffer.position(buffer.position() + 12);
+					
+					long last = buffer.getLong();
+					int length = buffer.getInt();
+					
+					buffer.position(buffer.position() + length);
+					
+					addChunk(series, this.size);
+					
+					this.lastList.set(series, last);
+					
+					break;
+				default:
+					throw new BufferUnderflowException();
+				}
+				
+				this.size = buffer.position();
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			// 기록 도중 중단된 마지막 record
+			if (this.writable) {
+				this.channel.truncate(this.size);
+			}
+		}
+	}
+	
+	private void define(int series, Key key, boolean unsigned) throws IOException {
+		if (series != this.chunkList.size()) {
+			throw new IOException(String.format("%s has invalid series %d.", this.path, series));
+		}
+		
+		this.seriesMap.put(key, series);
+		
+		if (unsigned) {
+			this.unsignedSet.add(key);
+		}
+		
+		this.chunkList.add(new long [] {0});
+		this.pendingList.add(null);
+		this.lastList.add(Long.MIN_VALUE);
+	}
+	
+	/**
+	 * chunk로 기록되기 전에 중단된 sample을 log에서 되살린다.
+	 * 이미 chunk에 들어간 sample은 건너뛰고, 쓰기 모드이면 log를 남은 sample만으로 다시 쓴다.
+	 */
+	private void recover() throws IOException {
+		if (Files.isRegularFile(this.logPath)) {
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(this.logPath));
+			int series;
+			long timestamp, value;
+			Chunk chunk;
+			
+			while (buffer.remaining() >= LOG_RECORD) {
+				series = buffer.getInt();
+				timestamp = buffer.getLong();
+				value = buffer.getLong();
+				
+				if (series < 0 || series >= this.pendingList.size() || timestamp <= this.lastList.get(series)) {
+					continue;
+				}
+				
+				chunk = this.pendingList.get(series);
+				
+				if (chunk == null) {
+					this.pendingList.set(series, chunk = new Chunk());
+				}
+				else if (timestamp <= chunk.last()) {
+					continue;
+				}
+				
+				chunk.append(timestamp, value);
+			}
+		}
+		
+		if (this.writable) {
+			checkpoint();
+		}
+	}
+	
+	private void addChunk(int series, long position) {
+		long [] chunks = this.chunkList.get(series);
+		int count = (int)chunks[0] +1;
+		
+		if (count == chunks.length) {
+			this.chunkList.set(series, chunks = Arrays.copyOf(chunks, count *2));
+		}
+		
+		chunks[count] = position;
+		chunks[0] = count;
+	}
+	
+	public void put(Key key, long timestamp, long value, boolean unsigned) throws IOException {
+		this.lock.writeLock().lock();
+		
+		try {
+			append(key, timestamp, value, unsigned);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+	
+	private void append(Key key, long timestamp, long value, boolean unsigned) throws IOException {
+		Integer series = this.seriesMap.get(key);
+		
+		if (series == null) {
+			byte []
+				oid = key.oid.getBytes(StandardCharsets.UTF_8),
+				index = key.index.getBytes(StandardCharsets.UTF_8);
+			
+			series = this.chunkList.size();
+			
+			write(ByteBuffer.allocate(13 + 2 + oid.length + 2 + index.length)
+				.put(unsigned? UNSIGNED: DEFINE)
+				.putInt(series)
+				.putLong(key.id)
+				.putShort((short)oid.length).put(oid)
+				.putShort((short)index.length).put(index)
+				.flip());
+			
+			define(series, key, unsigned);
+		}
+		
+		Chunk chunk = this.pendingList.get(series);
+		
+		if (chunk == null) {
+			this.pendingList.set(series, chunk = new Chunk());
+		}
+		
+		chunk.append(timestamp, value);
+		
+		log(series, timestamp, value);
+		
+		if (chunk.count() >= CHUNK_SIZE) {
+			writeChunk(series, chunk);
+			
+			this.pendingList.set(series, null);
+		}
+	}
+	
+	private void writeChunk(int series, Chunk chunk) throws IOException {
+		ByteBuffer data = chunk.data();
+		long position = this.size;
+		
+		write(ByteBuffer.allocate(CHUNK_HEADER + data.remaining())
+			.put(CHUNK)
+			.putInt(series)
+			.putInt(chunk.count())
+			.putLong(chunk.first())
+			.putLong(chunk.last())
+			.putInt(data.remaining())
+			.put(data)
+			.flip());
+		
+		addChunk(series, position);
+		
+		this.lastList.set(series, chunk.last());
+	}
+	
+	private void log(int series, long timestamp, long value) {
+		if (this.log.remaining() < LOG_RECORD) {
+			ByteBuffer log = ByteBuffer.allocate(this.log.capacity() *2);
+			
+			this.log.flip();
+			
+			this.log = log.put(this.log);
+		}
+		
+		this.log.putInt(series).putLong(timestamp).putLong(value);
+	}
+	
+	/**
+	 * 마지막 sync 이후의 sample을 log에 기록한다.
+	 */
+	public void sync() throws IOException {
+		this.lock.writeLock().lock();
+		
+		try {
+			if (!this.writable || !this.channel.isOpen() || this.log.position() == 0) {
+				return;
+			}
+			
+			if (this.logSize + this.log.position() > LOG_LIMIT) {
+				checkpoint();
+			}
+			else {
+				try (FileChannel channel = FileChannel.open(this.logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+					this.log.flip();
+					
+					while (this.log.hasRemaining()) {
+						this.logSize += channel.write(this.log);
+					}
+					
+					channel.force(false);
+				}
+				
+				this.log.clear();
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * 아직 chunk가 되지 않은 sample만으로 log를 새로 쓴다.
+	 */
+	private void checkpoint() throws IOException {
+		Chunk chunk;
+		
+		this.log.clear();
+		
+		for (int series=0, _series=this.pendingList.size(); series<_series; series++) {
+			chunk = this.pendingList.get(series);
+			
+			if (chunk != null) {
+				int s = series;
+				
+				chunk.get(Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, value) -> log(s, timestamp, value));
+			}
+		}
+		
+		Path tmp = this.logPath.resolveSibling(this.logPath.getFileName() +".tmp");
+		
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			this.log.flip();
+			
+			while (this.log.hasRemaining()) {
+				channel.write(this.log);
+			}
+			
+			channel.force(false);
+			
+			this.logSize = channel.size();
+		}
+		
+		// log에서 빠지는 sample은 chunk로 기록된 것이므로 segment를 먼저 디스크에 쓴다.
+		this.channel.force(false);
+		
+		Files.move(tmp, this.logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		
+		this.log.clear();
+	}
+	
+	private void write(ByteBuffer buffer) throws IOException {
+		if (this.size + buffer.remaining() > MAX_SIZE) {
+			throw new IOException(String.format("%s is full.", this.path));
+		}
+		
+		while (buffer.hasRemaining()) {
+			this.size += this.channel.write(buffer, this.size);
+		}
+	}
+	
+	/**
+	 * 하나의 파일을 동시에 읽는 요청은 READ_LIMIT 개로 제한한다.
+	 */
+	public void get(Key key, long from, long to, Visitor visitor) throws IOException {
+		try {
+			this.permits.acquire();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			
+			throw new InterruptedIOException();
+		}
+		
+		try {
+			this.lock.readLock().lock();
+			
+			try {
+				if (!this.channel.isOpen()) {
+					throw new ClosedChannelException();
+				}
+				
+				read(key, from, to, visitor);
+			} finally {
+				this.lock.readLock().unlock();
+			}
+		} finally {
+			this.permits.release();
+		}
+	}
+	
+	private void read(Key key, long from, long to, Visitor visitor) throws IOException {
+		Integer series = this.seriesMap.get(key);
+		
+		if (series == null) {
+			return;
+		}
+		
+		long [] chunks = this.chunkList.get(series);
+		
+		MappedByteBuffer map = chunks[0] > 0? map(): null;
+		ByteBuffer buffer;
+		int position;
+		
+		for (int i=1; i<=chunks[0]; i++) {
+			// write에서 MAX_SIZE를 넘지 않도록 하므로 int 범위 안에 있다.
+			position = (int)chunks[i];
+			
+			buffer = map.duplicate();
+			buffer.position(position + 5);
+			
+			int count = buffer.getInt();
+			long first = buffer.getLong();
+			long last = buffer.getLong();
+			int length = buffer.getInt();
+			
+			if (last < from || first > to) {
+				continue;
+			}
+			
+			buffer.limit(buffer.position() + length);
+			
+			Chunk.decode(buffer, count, first, from, to, visitor);
+		}
+		
+		Chunk chunk = this.pendingList.get(series);
+		
+		if (chunk != null) {
+			chunk.get(from, to, visitor);
+		}
+	}
+	
+	private synchronized MappedByteBuffer map() throws IOException {
+		long size = this.size;
+		
+		if (this.map == null || this.map.capacity() < size) {
+			this.map = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		
+		return this.map;
+	}
+	
+	public List<Key> keys() {
+		this.lock.readLock().lock();
+		
+		try {
+			return new ArrayList<>(this.seriesMap.keySet());
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+	
+	public boolean isUnsigned(Key key) {
+		this.lock.readLock().lock();
+		
+		try {
+			return this.unsignedSet.contains(key);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+	
+	public long size() {
+		return this.size;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		this.lock.writeLock().lock();
+		
+		try {
+			if (this.writable) {
+				Chunk chunk;
+				
+				for (int series=0, _series=this.pendingList.size(); series<_series; series++) {
+					chunk = this.pendingList.get(series);
+					
+					if (chunk != null) {
+						writeChunk(series, chunk);
+						
+						this.pendingList.set(series, null);
+					}
+				}
+				
+				this.channel.force(false);
+				
+				// 모든 sample이 chunk로 기록되었다.
+				Files.deleteIfExists(this.logPath);
+			}
+		} finally {
+			this.channel.close();
+			
+			this.lock.writeLock().unlock();
+		}
+	}
+	
+	private static String readString(ByteBuffer buffer) {
+		byte [] bytes = new byte [buffer.getShort() & 0xFFFF];
+		
+		buffer.get(bytes);
+		
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
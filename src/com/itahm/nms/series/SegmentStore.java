@@ -0,0 +1,465 @@
+package com.itahm.nms.series;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.itahm.util.Util;
+
+/**
+ * 날짜마다 하나의 Segment 파일(YYYY-MM-DD.ts)을 사용하는 SeriesStore.
+ * 지난 날짜의 Segment는 최근에 사용한 CACHE_SIZE 개까지 열어 두고, 여러 날에 걸친 요청은 날짜별로 병렬로 읽는다.
+ * sample은 timestamp가 속한 날짜의 Segment에 기록한다.
+ * 하루가 끝나도 지난 Segment는 늦게 도착한 sample을 받기 위해 seal 될 때까지 열어 두며, seal 되면 그날의 rollup(YYYY-MM-DD.sum)을 만든다.
+ */
+public class SegmentStore implements SeriesStore {
+
+	private final static String FILE_NAME = "%s.ts";
+	private final static String SUMMARY_NAME = "%s.sum";
+	private final static int CACHE_SIZE = 32;
+	private final static int READER_COUNT = 4;
+	// 한 번에 읽을 수 있는 기간
+	private final static int MAX_DAYS = 366;
+	private final static int LOCK_COUNT = 64;
+	
+	private final Path path;
+	private final ExecutorService reader;
+	private final Cache<Segment> cache = new Cache<>(CACHE_SIZE);
+	private final Cache<Summary> summaryCache = new Cache<>(CACHE_SIZE);
+	private final Object [] locks = new Object [LOCK_COUNT];
+	private volatile Segment current;
+	private volatile Segment previous;
+	
+	public SegmentStore(Path path) throws IOException {
+		this.path = path;
+		
+		for (int i=0; i<LOCK_COUNT; i++) {
+			this.locks[i] = new Object();
+		}
+		
+		this.current = new Segment(resolve(System.currentTimeMillis()), true);
+		
+		this.reader = new ThreadPoolExecutor(READER_COUNT, READER_COUNT, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread t = new Thread(r, "ITAhM Series Reader");
+			
+			t.setDaemon(true);
+			
+			return t;
+		});
+		
+		((ThreadPoolExecutor)this.reader).allowCoreThreadTimeOut(true);
+	}
+	
+	private Path resolve(long date) {
+		return resolve(FILE_NAME, date);
+	}
+	
+	private Path resolve(String name, long date) {
+		Calendar calendar = Calendar.getInstance();
+		
+		calendar.setTimeInMillis(date);
+		
+		return this.path.resolve(String.format(name, Util.toDateString(calendar.getTime())));
+	}
+	
+	@Override
+	public synchronized void put(long id, String index, String oid, long timestamp, long value, boolean unsigned) throws IOException {
+		Path file = resolve(timestamp);
+		Segment segment = this.current;
+		
+		if (!segment.path.equals(file)) {
+			segment = this.previous;
+			
+			if (segment == null || !segment.path.equals(file)) {
+				if (file.getFileName().compareTo(this.current.path.getFileName()) < 0) {
+					// 이미 seal 된 날의 sample은 버린다.
+					return;
+				}
+				
+				// Roller보다 먼저 날짜가 바뀐 경우
+				roll();
+				
+				segment = this.current;
+				
+				if (!segment.path.equals(file)) {
+					return;
+				}
+			}
+		}
+		
+		segment.put(new Key(id, index, oid), timestamp, value, unsigned);
+	}
+
+	@Override
+	public void get(long id, String index, String oid, long from, long to, Visitor visitor) throws IOException {
+		Key key = new Key(id, index, oid);
+		
+		fetch(from, to, (date, start, end) -> read(resolve(date), key, start, end), visitor);
+	}
+	
+	@Override
+	public void summarize(long id, String index, String oid, long from, long to, long resolution, Summarizer summarizer) throws IOException {
+		Key key = new Key(id, index, oid);
+		int i = 0;
+		
+		while (Summary.RESOLUTION[i] != resolution) {
+			if (++i == Summary.RESOLUTION.length) {
+				throw new IllegalArgumentException(String.format("resolution %d is not supported.", resolution));
+			}
+		}
+		
+		int r = i;
+		
+		fetch(from, to, (date, start, end) -> summarize(date, key, r, start, end), new Rollup.Reader(summarizer));
+	}
+	
+	/**
+	 * [from, to]를 날짜별로 나누어 병렬로 읽고 날짜 순서대로 visitor에 전달한다.
+	 * 일부만 읽은 결과를 돌려주지 않도록 중단되면 InterruptedIOException을 던진다.
+	 */
+	private void fetch(long from, long to, DayReader dayReader, Visitor visitor) throws IOException {
+		Calendar calendar = Calendar.getInstance();
+		List<Future<Series>> list = new ArrayList<>();
+		
+		to = Math.min(to, System.currentTimeMillis());
+		
+		calendar.setTimeInMillis(to);
+		
+		Util.trimDate(calendar);
+		
+		if (calendar.getTimeInMillis() <= from) {
+			dayReader.read(from, from, to).forEach(visitor);
+			
+			return;
+		}
+		
+		calendar.add(Calendar.DATE, -MAX_DAYS);
+		
+		if (from < calendar.getTimeInMillis()) {
+			throw new IllegalArgumentException(String.format("range exceeds %d days.", MAX_DAYS));
+		}
+		
+		calendar.setTimeInMillis(from);
+		
+		Util.trimDate(calendar);
+		
+		for (long date; (date = calendar.getTimeInMillis()) <= to; calendar.add(Calendar.DATE, 1)) {
+			long start = Math.max(from, date);
+			long end = to;
+			
+			list.add(this.reader.submit(() -> dayReader.read(start, start, end)));
+		}
+		
+		try {
+			for (Future<Series> future : list) {
+				future.get().forEach(visitor);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			
+			throw new InterruptedIOException();
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof IOException) {
+				throw (IOException)ee.getCause();
+			}
+			
+			throw new IOException(ee.getCause());
+		} finally {
+			for (Future<Series> future : list) {
+				future.cancel(true);
+			}
+		}
+	}
+	
+	private Series read(Path file, Key key, long from, long to) throws IOException {
+		Series series = new Series();
+		Segment segment = open(file);
+		
+		if (segment != null) {
+			try {
+				segment.get(key, from, to, series);
+			} catch (ClosedChannelException cce) {
+				// 읽는 도중 cache에서 밀려난 경우
+				try (Segment s = new Segment(file, false)) {
+					s.get(key, from, to, series = new Series());
+				}
+			}
+		}
+		
+		return series;
+	}
+	
+	private Series summarize(long date, Key key, int resolution, long from, long to) throws IOException {
+		Series series = new Series();
+		
+		// bucket은 시작 시각으로 기록되므로 from이 포함된 bucket도 읽는다.
+		from = Rollup.floor(from, Summary.RESOLUTION[resolution]);
+		
+		Path file = resolve(date);
+		Segment segment = writing(file);
+		
+		if (segment != null) {
+			// 아직 seal 되지 않은 날은 원본에서 계산한다.
+			Rollup rollup = new Rollup(Summary.RESOLUTION[resolution], segment.isUnsigned(key));
+			
+			try {
+				segment.get(key, from, to, rollup);
+			} catch (ClosedChannelException cce) {
+				// 읽는 도중 seal 된 경우
+				try (Segment s = new Segment(file, false)) {
+					s.get(key, from, to, rollup = new Rollup(Summary.RESOLUTION[resolution], s.isUnsigned(key)));
+				}
+			}
+			
+			rollup.finish().get(from, to, series);
+			
+			return series;
+		}
+		
+		Path summaryFile = resolve(SUMMARY_NAME, date);
+		Summary summary;
+		
+		synchronized(this.summaryCache) {
+			summary = this.summaryCache.get(summaryFile);
+		}
+		
+		if (summary == null) {
+			List<Summary> evicted = null;
+			
+			// 같은 파일을 두 번 만들거나 열지 않도록 파일마다 잠근다.
+			synchronized(lock(summaryFile)) {
+				synchronized(this.summaryCache) {
+					summary = this.summaryCache.get(summaryFile);
+				}
+				
+				if (summary == null) {
+					if (!Files.isRegularFile(summaryFile)) {
+						if (!Files.isRegularFile(file)) {
+							return series;
+						}
+						
+						Summary.create(file, summaryFile);
+					}
+					
+					summary = new Summary(summaryFile);
+					
+					synchronized(this.summaryCache) {
+						this.summaryCache.put(summaryFile, summary);
+						
+						evicted = this.summaryCache.evicted();
+					}
+				}
+			}
+			
+			if (evicted != null) {
+				Cache.close(evicted);
+			}
+		}
+		
+		try {
+			summary.get(key, resolution, from, to, series);
+		} catch (ClosedChannelException cce) {
+			try (Summary s = new Summary(summaryFile)) {
+				s.get(key, resolution, from, to, series = new Series());
+			}
+		}
+		
+		return series;
+	}
+	
+	/**
+	 * 기록 중인(current 또는 아직 seal 되지 않은 previous) Segment
+	 */
+	private Segment writing(Path file) {
+		Segment segment = this.current;
+		
+		if (segment.path.equals(file)) {
+			return segment;
+		}
+		
+		segment = this.previous;
+		
+		return segment != null && segment.path.equals(file)? segment: null;
+	}
+	
+	private Segment open(Path file) throws IOException {
+		Segment segment = writing(file);
+		
+		if (segment != null) {
+			return segment;
+		}
+		
+		synchronized(this.cache) {
+			segment = this.cache.get(file);
+		}
+		
+		if (segment == null && Files.isRegularFile(file)) {
+			List<Segment> evicted = null;
+			
+			// 파일을 여는 동안 cache 전체를 잠그지 않는다.
+			synchronized(lock(file)) {
+				synchronized(this.cache) {
+					segment = this.cache.get(file);
+				}
+				
+				if (segment == null) {
+					segment = new Segment(file, false);
+					
+					synchronized(this.cache) {
+						this.cache.put(file, segment);
+						
+						evicted = this.cache.evicted();
+					}
+				}
+			}
+			
+			// Segment는 읽는 중인 요청이 끝나야 닫히므로 cache 밖에서 닫는다.
+			if (evicted != null) {
+				Cache.close(evicted);
+			}
+		}
+		
+		return segment;
+	}
+	
+	/**
+	 * 파일마다 lock을 만들면 날짜가 지날수록 늘어나므로 LOCK_COUNT 개의 lock을 나누어 쓴다.
+	 */
+	private Object lock(Path file) {
+		return this.locks[(file.hashCode() & 0x7FFFFFFF) % LOCK_COUNT];
+	}
+	
+	@Override
+	public void release() {
+		List<Segment> segments;
+		List<Summary> summaries;
+		
+		synchronized(this.cache) {
+			segments = this.cache.drain();
+		}
+		
+		synchronized(this.summaryCache) {
+			summaries = this.summaryCache.drain();
+		}
+		
+		Cache.close(segments);
+		Cache.close(summaries);
+	}
+	
+	/**
+	 * 오늘의 Segment를 새로 열고, 지금까지의 Segment는 seal 될 때까지 previous로 남겨 둔다.
+	 */
+	@Override
+	public synchronized void roll() throws IOException {
+		Path file = resolve(System.currentTimeMillis());
+		
+		if (this.current.path.equals(file)) {
+			return;
+		}
+		
+		if (this.previous != null) {
+			// seal 되지 않은 채 하루가 더 지난 경우, summary는 처음 요청될 때 만든다.
+			// 여기서 만들면 seal과 반대 순서로 lock을 잡게 된다.
+			this.previous.close();
+		}
+		
+		this.previous = this.current;
+		this.current = new Segment(file, true);
+	}
+	
+	@Override
+	public void seal() throws IOException {
+		Segment segment = this.previous;
+		
+		if (segment == null) {
+			return;
+		}
+		
+		long start = System.currentTimeMillis();
+		Path file = segment.path;
+		Path summaryFile = file.resolveSibling(file.getFileName().toString().replaceFirst("\\.ts$", ".sum"));
+		
+		// previous를 비우는 순간부터 summarize가 summary를 만들 수 있으므로 summary lock을 먼저 잡는다.
+		synchronized(lock(summaryFile)) {
+			synchronized(this) {
+				if (this.previous != segment) {
+					return;
+				}
+				
+				this.previous = null;
+				
+				segment.close();
+			}
+			
+			Summary summary;
+			
+			synchronized(this.summaryCache) {
+				summary = this.summaryCache.remove(summaryFile);
+			}
+			
+			if (summary != null) {
+				summary.close();
+			}
+			
+			Summary.create(file, summaryFile);
+		}
+		
+		System.out.format("Summary %s created in %dms.\n", summaryFile.getFileName(), System.currentTimeMillis() - start);
+	}
+	
+	/**
+	 * chunk가 되지 않은 sample을 log에 남긴다.
+	 */
+	@Override
+	public void sync() throws IOException {
+		Segment previous = this.previous;
+		
+		this.current.sync();
+		
+		if (previous != null) {
+			previous.sync();
+		}
+	}
+	
+	@Override
+	public long size(long date) throws IOException {
+		Path file = resolve(date);
+		Segment segment = writing(file);
+		
+		if (segment != null) {
+			return segment.size();
+		}
+		
+		return Files.isRegularFile(file)? Files.size(file): 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.reader.shutdownNow();
+		
+		release();
+		
+		synchronized(this) {
+			if (this.previous != null) {
+				this.previous.close();
+			}
+			
+			this.current.close();
+		}
+	}
+	
+	private interface DayReader {
+		public Series read(long date, long from, long to) throws IOException;
+	}
+}
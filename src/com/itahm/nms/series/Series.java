@@ -0,0 +1,32 @@
+package com.itahm.nms.series;
+
+import java.util.Arrays;
+
+import com.itahm.nms.series.SeriesStore.Visitor;
+
+/**
+ * 읽어 들인 sample을 순서대로 보관한다.
+ */
+class Series implements Visitor {
+
+	private long [] timestamp = new long [64];
+	private long [] value = new long [64];
+	private int size = 0;
+	
+	@Override
+	public void visit(long timestamp, long value) {
+		if (this.size == this.timestamp.length) {
+			this.timestamp = Arrays.copyOf(this.timestamp, this.size *2);
+			this.value = Arrays.copyOf(this.value, this.size *2);
+		}
+		
+		this.timestamp[this.size] = timestamp;
+		this.value[this.size++] = value;
+	}
+	
+	public void forEach(Visitor visitor) {
+		for (int i=0; i<this.size; i++) {
+			visitor.visit(this.timestamp[i], this.value[i]);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.itahm.nms.series;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * rolling 자원의 시계열 저장소.
+ * 하나의 series는 (id, oid, index)로 구분된다.
+ * get은 [from, to] 구간을 날짜와 관계없이 시간 순서대로 visitor에 전달한다.
+ * get과 summarize의 구간은 1년(366일)을 넘을 수 없으며, 넘으면 IllegalArgumentException을 던진다.
+ */
+public interface SeriesStore extends Closeable {
+	public void put(long id, String index, String oid, long timestamp, long value, boolean unsigned) throws IOException;
+	public void get(long id, String index, String oid, long from, long to, Visitor visitor) throws IOException;
+	public void summarize(long id, String index, String oid, long from, long to, long resolution, Summarizer summarizer) throws IOException;
+	public void roll() throws IOException;
+	public void seal() throws IOException;
+	public void sync() throws IOException;
+	public void release();
+	public long size(long date) throws IOException;
+	
+	public interface Visitor {
+		public void visit(long timestamp, long value);
+	}
+	
+	public interface Summarizer {
+		public void visit(long timestamp, long min, long max, long avg, long last);
+	}
+}
@@ -0,0 +1,244 @@
+package com.itahm.nms.series;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.itahm.nms.series.SeriesStore.Visitor;
+
+/**
+ * 지난 하루의 rollup 파일(YYYY-MM-DD.sum).
+ * 
+ * header: MAGIC(4)
+ * series: 'R' id(8) oid length(2) oid index length(2) index
+ *   RESOLUTION 마다 count(4) first(8) last(8) length(4) data
+ */
+class Summary implements Closeable {
+
+	public final static long [] RESOLUTION = {
+		TimeUnit.MINUTES.toMillis(5),
+		TimeUnit.HOURS.toMillis(1),
+		TimeUnit.DAYS.toMillis(1)
+	};
+	
+	private final static int MAGIC = 0x49545355;
+	private final static byte ROLLUP = 'R';
+	private final static int READ_LIMIT = 4;
+	
+	private final FileChannel channel;
+	private final MappedByteBuffer map;
+	private final Map<Key, Integer> seriesMap = new HashMap<>();
+	private final Semaphore permits = new Semaphore(READ_LIMIT);
+	
+	public Summary(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		
+		try {
+			this.map = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+			
+			load(path);
+		} catch (IOException ioe) {
+			this.channel.close();
+			
+			throw ioe;
+		}
+	}
+	
+	private void load(Path path) throws IOException {
+		ByteBuffer buffer = this.map.duplicate();
+		
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(String.format("%s is not a summary.", path));
+			}
+			
+			while (buffer.hasRemaining()) {
+				int position = buffer.position();
+				
+				if (buffer.get() != ROLLUP) {
+					throw new IOException(String.format("%s is corrupted.", path));
+				}
+				
+				long id = buffer.getLong();
+				String oid = readString(buffer);
+				
+				this.seriesMap.put(new Key(id, readString(buffer), oid), position);
+				
+				for (int i=0; i<RESOLUTION.length; i++) {
+					buffer.position(buffer.position() + 20);
+					
+					int length = buffer.getInt();
+					
+					buffer.position(buffer.position() + length);
+				}
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException(String.format("%s is corrupted.", path), e);
+		}
+	}
+	
+	/**
+	 * 읽기 전용이므로 잠금 없이 읽되, 하나의 파일을 동시에 읽는 요청은 READ_LIMIT 개로 제한한다.
+	 */
+	public void get(Key key, int resolution, long from, long to, Visitor visitor) throws IOException {
+		if (!this.channel.isOpen()) {
+			throw new ClosedChannelException();
+		}
+		
+		try {
+			this.permits.acquire();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			
+			throw new InterruptedIOException();
+		}
+		
+		try {
+			read(key, resolution, from, to, visitor);
+		} finally {
+			this.permits.release();
+		}
+	}
+	
+	private void read(Key key, int resolution, long from, long to, Visitor visitor) {
+		Integer position = this.seriesMap.get(key);
+		
+		if (position == null) {
+			return;
+		}
+		
+		ByteBuffer buffer = this.map.duplicate();
+		
+		buffer.position(position + 1 + 8);
+		
+		readString(buffer);
+		readString(buffer);
+		
+		for (int i=0; ; i++) {
+			int count = buffer.getInt();
+			long first = buffer.getLong();
+			long last = buffer.getLong();
+			int length = buffer.getInt();
+			
+			if (i == resolution) {
+				if (count > 0 && last >= from && first <= to) {
+					buffer.limit(buffer.position() + length);
+					
+					Chunk.decode(buffer, count, first, from, to, visitor);
+				}
+				
+				return;
+			}
+			
+			buffer.position(buffer.position() + length);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+	
+	/**
+	 * segment의 모든 series에 대해 rollup 파일을 만든다.
+	 */
+	public static void create(Path segment, Path summary) throws IOException {
+		Path temp = summary.resolveSibling(summary.getFileName() +".tmp");
+		
+		try (Segment source = new Segment(segment, false);
+			FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			Rollup [] rollups = new Rollup [RESOLUTION.length];
+			
+			buffer.putInt(MAGIC);
+			
+			for (Key key : source.keys()) {
+				for (int i=0; i<RESOLUTION.length; i++) {
+					rollups[i] = new Rollup(RESOLUTION[i], source.isUnsigned(key));
+				}
+				
+				source.get(key, Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, value) -> {
+					for (Rollup rollup : rollups) {
+						rollup.visit(timestamp, value);
+					}
+				});
+				
+				byte []
+					oid = key.oid.getBytes(StandardCharsets.UTF_8),
+					index = key.index.getBytes(StandardCharsets.UTF_8);
+				
+				buffer = ensure(channel, buffer, 13 + 2 + oid.length + 2 + index.length);
+				
+				buffer
+					.put(ROLLUP)
+					.putLong(key.id)
+					.putShort((short)oid.length).put(oid)
+					.putShort((short)index.length).put(index);
+				
+				for (Rollup rollup : rollups) {
+					Chunk chunk = rollup.finish();
+					ByteBuffer data = chunk.data();
+					
+					buffer = ensure(channel, buffer, 24 + data.remaining());
+					
+					buffer
+						.putInt(chunk.count())
+						.putLong(chunk.first())
+						.putLong(chunk.last())
+						.putInt(data.remaining())
+						.put(data);
+				}
+			}
+			
+			buffer.flip();
+			
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			
+			channel.force(false);
+		}
+		
+		Files.move(temp, summary, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+		if (buffer.remaining() < length) {
+			buffer.flip();
+			
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			
+			buffer.clear();
+			
+			if (buffer.capacity() < length) {
+				buffer = ByteBuffer.allocate(length);
+			}
+		}
+		
+		return buffer;
+	}
+	
+	private static String readString(ByteBuffer buffer) {
+		byte [] bytes = new byte [buffer.getShort() & 0xFFFF];
+		
+		buffer.get(bytes);
+		
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -6,7 +6,14 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 
+import com.itahm.http.EventStream;
 import com.itahm.http.Request;
 import com.itahm.http.Response;
 import com.itahm.json.JSONException;
@@ -14,19 +21,37 @@ import com.itahm.json.JSONObject;
 import com.itahm.kts.H2Agent;
 import com.itahm.nms.Commander;
 import com.itahm.smtp.SMTP;
+import com.itahm.util.EventBus;
 import com.itahm.util.Listener;
 import com.itahm.util.Util;
 
 public class NMS implements Serviceable, Listener {
 
 	private final static String VERSION = "SOS v1.3";
+	private final static int STREAM_CAPACITY = 256;
+	private final static int LISTEN_QUEUE = 1024;
+	private final static int SMTP_QUEUE = 256;
+	// 응답 없이 worker 를 붙잡아 두지 않도록 LISTEN 은 이 시간까지만 기다린다
+	private final static long LISTEN_TIMEOUT = 30000;
+	// event 가 없어도 stream 이 idle timeout 으로 끊기지 않도록 보내는 주기
+	private final static long HEARTBEAT = 30000;
 	private Commander agent;
 	private final SMTP smtpServer = new SMTP();
 	private final Path root;
 	private final long expire;
 	private final int limit;
-	private Boolean isClosed = true;
-	private byte [] event = null;
+	// Boolean 상수를 monitor 로 쓰면 다른 객체와 lock 을 공유하게 된다
+	private final Object lock = new Object();
+	private volatile boolean isClosed = true;
+	// long polling 에 전달한 event 의 처음과 마지막 eventID
+	private long firstEventID = -1;
+	private long lastEventID = -1;
+	private volatile EventBus<JSONObject> bus;
+	// stream 과 replay 로 이미 보낸 마지막 eventID
+	private final Map<EventStream, Long> streams = new HashMap<>();
+	// stream 에 전달한 마지막 eventID
+	private long streamEventID = -1;
+	private Timer heartbeat;
 	
 	public NMS(Builder builder) throws Exception {
 		root = builder.root;
@@ -78,12 +103,19 @@ public class NMS implements Serviceable, Listener {
 
 	@Override
 	public void start() {
-		synchronized(this.isClosed) {
+		synchronized(this.lock) {
 			if (!this.isClosed) {
 				return;
 			}
 			
 			try {
+				EventBus<JSONObject> bus = new EventBus<>("ITAhM Event");
+				
+				bus.subscribe("Listen", LISTEN_QUEUE, EventBus.Overflow.DROP_OLDEST, this::deliver);
+				bus.subscribe("SMTP", SMTP_QUEUE, EventBus.Overflow.DROP_NEWEST, this::mail);
+				
+				this.bus = bus;
+				
 				this.agent = new H2Agent(this, this.root, this.limit);
 			
 				JSONObject config = this.agent.getConfig();
@@ -97,16 +129,32 @@ public class NMS implements Serviceable, Listener {
 				
 				this.agent.start();
 				
+				this.heartbeat = new Timer("ITAhM Heartbeat", true);
+				
+				this.heartbeat.schedule(new TimerTask() {
+					@Override
+					public void run() {
+						heartbeat();
+					}
+				}, HEARTBEAT, HEARTBEAT);
+				
 				this.isClosed = false;
 			} catch (Exception e) {
 				e.printStackTrace();
+				
+				if (this.bus != null) {
+					this.bus.close();
+					this.bus = null;
+				}
 			}
 		}
 	}
 	
 	@Override
 	public void stop() {
-		synchronized(this.isClosed) {
+		List<EventStream> streams;
+		
+		synchronized(this.lock) {
 			if (this.isClosed) {
 				return;
 			}
@@ -117,16 +165,31 @@ public class NMS implements Serviceable, Listener {
 				ioe.printStackTrace();
 			}
 			
+			this.bus.close();
+			this.bus = null;
+			
+			this.heartbeat.cancel();
+			this.heartbeat = null;
+			
+			synchronized(this.streams) {
+				streams = new ArrayList<>(this.streams.keySet());
+				
+				this.streams.clear();
+			}
+			
 			this.isClosed = true;
 		}
+		
+		// stream 을 닫으면 connection 의 lock 을 잡으므로 lock 밖에서 닫는다.
+		for (EventStream stream : streams) {
+			stream.close();
+		}
 	}
 
 	@Override
 	public boolean service(Request request, Response response, JSONObject data) {
-		synchronized(this.isClosed) {
-			if (this.isClosed) {
-				return false;
-			}
+		if (this.isClosed) {
+			return false;
 		}
 	
 		String command = data.getString("command").toUpperCase();
@@ -136,19 +199,21 @@ public class NMS implements Serviceable, Listener {
 			case "LISTEN":
 					JSONObject event = null;
 					
-					if (data.has("eventID")) {
-						event = this.agent.getEvent(data.getLong("eventID"));
+					if (data.has("stream") && data.getBoolean("stream")) {
+						listen(response.stream(STREAM_CAPACITY), data.has("eventID")? data.getLong("eventID"): -1);
+						
+						break;
+					}
+					
+					try {
+						event = poll(data.has("eventID")? data.getLong("eventID"): -1);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
 					}
 					
 					if (event == null) {
-						synchronized(this) {
-							try {
-								wait();
-							} catch (InterruptedException ie) {
-							}
-							
-							response.write(this.event);
-						}
+						// client 는 다시 LISTEN 한다
+						response.setStatus(Response.Status.NOCONTENT);
 					}
 					else {
 						response.write(event.toString().getBytes(StandardCharsets.UTF_8.name()));
@@ -172,6 +237,100 @@ public class NMS implements Serviceable, Listener {
 		return true;
 	}
 		
+	/**
+	 * eventID 부터 기록된 첫 event 를 LISTEN_TIMEOUT 까지 기다린다. eventID 가 음수이면 지금 이후의 첫 event 를 기다린다.
+	 * 한 번에 하나씩 돌려주고 client 는 다음 eventID 로 다시 요청하므로 한 묶음으로 전달된 event 도 빠짐없이 받는다.
+	 */
+	private JSONObject poll(long eventID) throws InterruptedException {
+		long due = System.currentTimeMillis() + LISTEN_TIMEOUT;
+		long timeout;
+		JSONObject event;
+		
+		if (eventID < 0) {
+			synchronized(this) {
+				if (this.lastEventID < 0) {
+					while (this.lastEventID < 0 && (timeout = due - System.currentTimeMillis()) > 0) {
+						wait(timeout);
+					}
+					
+					if (this.lastEventID < 0) {
+						return null;
+					}
+					
+					eventID = this.firstEventID;
+				}
+				else {
+					eventID = this.lastEventID +1;
+				}
+			}
+		}
+		
+		long seen;
+		
+		while (true) {
+			synchronized(this) {
+				seen = Math.max(this.lastEventID, eventID -1);
+			}
+			
+			// event 는 DB 에 기록된 뒤 전달되므로, seen 까지는 DB 에서 찾을 수 있다.
+			// 기록에 실패한 eventID 는 비어 있으므로 그 다음 event 를 찾는다.
+			event = this.agent.getNextEvent(eventID);
+			
+			if (event != null) {
+				return event;
+			}
+			
+			synchronized(this) {
+				while (this.lastEventID <= seen && (timeout = due - System.currentTimeMillis()) > 0) {
+					wait(timeout);
+				}
+				
+				if (this.lastEventID <= seen) {
+					return null;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * eventID 이후의 event 를 STREAM_CAPACITY 개까지 DB 에서 읽어 보낸 뒤 실시간 event 를 받는다.
+	 * event 는 DB 에 기록된 뒤 전달되므로, replay 한 eventID 까지는 실시간 전달에서 건너뛴다.
+	 * DB 를 읽는 동안 deliver 를 막지 않도록 replay 는 lock 밖에서 하고,
+	 * 그 사이 전달된 event 가 있으면 따라잡을 때까지 다시 replay 한 뒤 등록한다.
+	 */
+	private void listen(EventStream stream, long eventID) {
+		long last = eventID;
+		int count = 0;
+		JSONObject event;
+		
+		while (true) {
+			long from = last;
+			
+			while (last >= 0 && count < STREAM_CAPACITY && (event = this.agent.getNextEvent(last +1)) != null) {
+				last = event.getLong("eventID");
+				
+				stream.send(last, event.toString());
+				
+				count++;
+			}
+			
+			synchronized(this.streams) {
+				// 따라잡았거나, 더 읽을 수 없거나, 한도를 채웠으면 등록한다.
+				if (last >= this.streamEventID || last == from || count >= STREAM_CAPACITY) {
+					this.streams.put(stream, last < 0? -1: Math.max(last, this.streamEventID));
+					
+					return;
+				}
+			}
+		}
+	}
+	
+	private void heartbeat() {
+		synchronized(this.streams) {
+			this.streams.keySet().removeIf(stream -> !stream.heartbeat());
+		}
+	}
+	
 	@Override
 	public void onEvent(Object caller, Object ...args) {
 		JSONObject event = null;
@@ -184,34 +343,83 @@ public class NMS implements Serviceable, Listener {
 			return;
 		}
 		
+		EventBus<JSONObject> bus = this.bus;
+		
+		if (bus != null) {
+			bus.publish(event);
+		}
+	}
+	
+	/**
+	 * LISTEN 대기 중인 요청과 event stream 에 전달한다.
+	 */
+	private void deliver(List<JSONObject> events) {
 		synchronized(this) {
-			try {
-				ArrayList<String> list = new ArrayList<>();
-				JSONObject
-					userData = this.agent.getUser(),
-					user;
-				
-				for (Object name : userData.keySet()) {
-					user = userData.getJSONObject((String)name);
+			for (JSONObject event : events) {
+				if (event.has("eventID")) {
+					long eventID = event.getLong("eventID");
 					
-					if (user.has("email")) {
-						list.add(user.getString("email"));
+					if (this.firstEventID < 0) {
+						this.firstEventID = eventID;
 					}
+					
+					this.lastEventID = Math.max(this.lastEventID, eventID);
+				}
+			}
+			
+			notifyAll();
+		}
+		
+		synchronized(this.streams) {
+			for (JSONObject event : events) {
+				if (!event.has("eventID")) {
+					continue;
 				}
 				
-				if (list.size() > 0) {
-					String [] sa = new String [list.size()];
+				long eventID = event.getLong("eventID");
+				String data = event.toString();
+				
+				this.streamEventID = Math.max(this.streamEventID, eventID);
+				
+				for (Iterator<Map.Entry<EventStream, Long>> it = this.streams.entrySet().iterator(); it.hasNext();) {
+					Map.Entry<EventStream, Long> entry = it.next();
 					
-					list.toArray(sa);
+					if (eventID <= entry.getValue()) {
+						continue;
+					}
 					
-					this.smtpServer.send(event.getString("message"), sa);
+					if (!entry.getKey().send(eventID, data)) {
+						it.remove();
+					}
 				}
-				
-				this.event = event.toString().getBytes(StandardCharsets.UTF_8.name());
-				
-				notifyAll();
-			} catch (UnsupportedEncodingException uee) {
-				uee.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * 사용자 목록은 한 묶음의 event 마다 한 번만 읽는다.
+	 */
+	private void mail(List<JSONObject> events) {
+		ArrayList<String> list = new ArrayList<>();
+		JSONObject
+			userData = this.agent.getUser(),
+			user;
+		
+		for (Object name : userData.keySet()) {
+			user = userData.getJSONObject((String)name);
+			
+			if (user.has("email")) {
+				list.add(user.getString("email"));
+			}
+		}
+		
+		if (list.size() > 0) {
+			String [] sa = new String [list.size()];
+			
+			list.toArray(sa);
+			
+			for (JSONObject event : events) {
+				this.smtpServer.send(event.getString("message"), sa);
 			}
 		}
 	}
@@ -254,9 +462,9 @@ public class NMS implements Serviceable, Listener {
 			default:
 				return false;
 			}
-		} catch (JSONException jsone) {
+		} catch (JSONException | IllegalArgumentException e) {
 			response.write(new JSONObject().
-				put("error", jsone.getMessage()).toString());
+				put("error", e.getMessage()).toString());
 			
 			response.setStatus(Response.Status.BADREQUEST);
 			
@@ -590,7 +798,14 @@ public class NMS implements Serviceable, Listener {
 		case "PROFILE":
 			return this.agent.getProfile();
 		case "RESOURCE":
-			return  this.agent.getResource(request.getLong("id"),
+			return request.has("from")?
+				this.agent.getResource(request.getLong("id"),
+					request.getInt("index"),
+					request.getString("oid"),
+					request.getLong("from"),
+					request.optLong("to", System.currentTimeMillis()),
+					request.has("summary")? request.getBoolean("summary"): false):
+				this.agent.getResource(request.getLong("id"),
 					request.getInt("index"),
 					request.getString("oid"),
 					request.getLong("date"),
@@ -613,8 +828,6 @@ public class NMS implements Serviceable, Listener {
 	
 	@Override
 	public boolean isRunning() {
-		synchronized(this.isClosed) {
-			return !this.isClosed;
-		}
+		return !this.isClosed;
 	}
 }
@@ -0,0 +1,152 @@
+package com.itahm.util;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 여러 thread 가 publish 하는 event 를 consumer 마다 따로 둔 bounded buffer 로 나눠 준다.
+ * publish 는 lock 없이 끝나고, 느린 consumer 는 자신의 정책대로 event 를 버릴 뿐 producer 를 막지 않는다.
+ */
+public class EventBus<T> implements Closeable {
+
+	public enum Overflow {
+		DROP_OLDEST, DROP_NEWEST;
+	}
+	
+	public interface Handler<T> {
+		public void handle(List<T> events);
+	}
+	
+	private final static int BATCH_SIZE = 64;
+	
+	private final String name;
+	private final List<Consumer> consumers = new CopyOnWriteArrayList<>();
+	private volatile boolean closed = false;
+	
+	public EventBus(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * consumer 마다 하나의 daemon thread 가 buffer 를 비운다.
+	 * handler 는 쌓인 event 를 최대 BATCH_SIZE 개씩 받는다.
+	 */
+	public void subscribe(String name, int capacity, Overflow overflow, Handler<T> handler) {
+		Consumer consumer = new Consumer(name, capacity, overflow, handler);
+		
+		this.consumers.add(consumer);
+		
+		consumer.thread.start();
+	}
+	
+	public void publish(T event) {
+		if (this.closed) {
+			return;
+		}
+		
+		for (Consumer consumer : this.consumers) {
+			consumer.offer(event);
+		}
+	}
+	
+	/**
+	 * consumer 별로 buffer 가 넘쳐 버린 event 의 수.
+	 */
+	public long getDropped(String name) {
+		for (Consumer consumer : this.consumers) {
+			if (consumer.name.equals(name)) {
+				return consumer.dropped.get();
+			}
+		}
+		
+		return 0;
+	}
+	
+	@Override
+	public void close() {
+		this.closed = true;
+		
+		for (Consumer consumer : this.consumers) {
+			LockSupport.unpark(consumer.thread);
+		}
+		
+		this.consumers.clear();
+	}
+	
+	private class Consumer implements Runnable {
+		private final String name;
+		private final int capacity;
+		private final Overflow overflow;
+		private final Handler<T> handler;
+		private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger size = new AtomicInteger();
+		private final AtomicLong dropped = new AtomicLong();
+		private final Thread thread;
+		
+		private Consumer(String name, int capacity, Overflow overflow, Handler<T> handler) {
+			this.name = name;
+			this.capacity = capacity;
+			this.overflow = overflow;
+			this.handler = handler;
+			
+			thread = new Thread(this, String.format("%s %s", EventBus.this.name, name));
+			
+			thread.setDaemon(true);
+		}
+		
+		private void offer(T event) {
+			if (this.size.incrementAndGet() > this.capacity) {
+				if (this.overflow == Overflow.DROP_NEWEST) {
+					this.size.decrementAndGet();
+					this.dropped.incrementAndGet();
+					
+					return;
+				}
+				
+				if (this.queue.poll() != null) {
+					this.size.decrementAndGet();
+					this.dropped.incrementAndGet();
+				}
+			}
+			
+			this.queue.offer(event);
+			
+			LockSupport.unpark(this.thread);
+		}
+		
+		@Override
+		public void run() {
+			List<T> events = new ArrayList<>(BATCH_SIZE);
+			T event;
+			
+			while (!closed) {
+				while (events.size() < BATCH_SIZE && (event = this.queue.poll()) != null) {
+					this.size.decrementAndGet();
+					
+					events.add(event);
+				}
+				
+				if (events.isEmpty()) {
+					LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+					
+					continue;
+				}
+				
+				try {
+					this.handler.handle(events);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				
+				events.clear();
+			}
+		}
+	}
+}